@@ -0,0 +1,100 @@
+package com.example.cs_agent_service.service;
+
+import com.example.cs_agent_service.config.PromptProperties;
+import com.example.cs_agent_service.dto.ChatResponse;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.service.cache.ChatResponseCodec;
+import com.example.cs_agent_service.service.prompt.ContextPacker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /api/agent/chat 每次请求都会走的纯 CPU 步骤：问题归一化、缓存 key 哈希、prompt 组装（BM25 打分 + 预算填充）、
+ * 缓存值编解码（JSON 与二进制 codec 对比）。改动这些热点前后用它对比。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatPathBenchmark {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final ContextPacker contextPacker = new ContextPacker(new PromptProperties(), new SimpleMeterRegistry());
+
+    private String question;
+    private List<KnowledgeBase> hits;
+    private ChatResponse response;
+    private String responseJson;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        question = "请问，黑胶VIP 连续包月怎么取消呀？";
+
+        hits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            KnowledgeBase kb = new KnowledgeBase();
+            kb.setId((long) i + 1);
+            kb.setQuestion("黑胶VIP问题" + i);
+            kb.setAnswer("打开网易云音乐App，进入【我的】-【设置】-【账号与安全】-【自动续费管理】，"
+                    + "选择对应的连续包月服务并关闭即可。关闭后当前周期内权益不受影响。#" + i);
+            hits.add(kb);
+        }
+
+        response = ChatResponse.of(hits.get(0).getAnswer(), hits.size());
+        responseJson = objectMapper.writeValueAsString(response);
+        responseBytes = ChatResponseCodec.encode(response, Long.MAX_VALUE, 512);
+    }
+
+    @Benchmark
+    public String normalizeQuestion() {
+        return KnowledgeBaseService.normalizeQuestion(question);
+    }
+
+    @Benchmark
+    public String sha256Hex() {
+        return ChatService.sha256Hex(question);
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return contextPacker.build(question, hits);
+    }
+
+    @Benchmark
+    public String serializeResponse() throws Exception {
+        return objectMapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public Object deserializeResponse() throws Exception {
+        return objectMapper.readValue(responseJson, ChatResponse.class);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() {
+        return ChatResponseCodec.encode(response, Long.MAX_VALUE, 512);
+    }
+
+    @Benchmark
+    public Object decodeResponse() {
+        return ChatResponseCodec.decode(responseBytes);
+    }
+}
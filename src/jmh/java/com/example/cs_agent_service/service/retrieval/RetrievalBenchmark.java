@@ -0,0 +1,104 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import com.example.cs_agent_service.config.EmbeddingProperties;
+import com.example.cs_agent_service.config.RetrievalProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.service.embedding.HashingEmbeddingProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合成知识库（10k/100k 条）上的索引检索（n-gram 倒排与 HNSW 向量）。条目由固定词表随机拼出，种子固定，结果可复现。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class RetrievalBenchmark {
+
+    private static final String[] TOPICS = {
+            "会员", "黑胶VIP", "歌单", "下载", "听歌识曲", "云盘", "评论", "私信", "直播", "电台",
+            "账号", "密码", "手机号", "实名认证", "退款", "发票", "播放器", "歌词", "音质", "耳机"
+    };
+    private static final String[] ACTIONS = {
+            "怎么开通", "如何取消", "在哪里设置", "为什么失败", "收费吗", "怎么找回", "可以转让吗",
+            "有什么权益", "怎么关闭", "多久生效"
+    };
+
+    @Param({"10000", "100000"})
+    public int kbSize;
+
+    private KnowledgeIndex index;
+    private VectorIndex vectorIndex;
+    private String hitQuery;
+    private String missQuery;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        List<KnowledgeBase> all = new ArrayList<>(kbSize);
+        for (int i = 0; i < kbSize; i++) {
+            String topic = TOPICS[random.nextInt(TOPICS.length)];
+            String action = ACTIONS[random.nextInt(ACTIONS.length)];
+            KnowledgeBase kb = new KnowledgeBase();
+            kb.setId((long) i + 1);
+            kb.setQuestion(topic + action + "（" + i + "）");
+            kb.setKeywords(topic + "," + action + ",条目" + i);
+            kb.setActive(true);
+            all.add(kb);
+        }
+        index = new KnowledgeIndex(null, new RetrievalProperties());
+        index.rebuild(all);
+
+        RetrievalProperties vectorProps = new RetrievalProperties();
+        vectorProps.setMode("hybrid");
+        vectorIndex = new VectorIndex(null, new HashingEmbeddingProvider(new EmbeddingProperties()), vectorProps);
+        vectorIndex.rebuild(all);
+
+        hitQuery = "黑胶VIP如何取消";
+        missQuery = "今天天气怎么样";
+    }
+
+    @Benchmark
+    public List<Long> searchHit() {
+        return index.search(hitQuery, 5);
+    }
+
+    @Benchmark
+    public List<Long> searchMiss() {
+        return index.search(missQuery, 5);
+    }
+
+    @Benchmark
+    public List<Long> vectorSearchHit() {
+        return vectorIndex.search(hitQuery, 5);
+    }
+
+    @Benchmark
+    public List<Long> vectorSearchMiss() {
+        return vectorIndex.search(missQuery, 5);
+    }
+
+    @Benchmark
+    public Map<Long, Integer> matchKeywords() {
+        return index.matchKeywords(hitQuery);
+    }
+}
@@ -6,11 +6,41 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.CacheWarmupProperties;
+import com.example.cs_agent_service.config.ChatBatchProperties;
+import com.example.cs_agent_service.config.ContextWindowProperties;
+import com.example.cs_agent_service.config.ConversationStatusProperties;
+import com.example.cs_agent_service.config.EmbeddingProperties;
+import com.example.cs_agent_service.config.KnowledgeChangeProperties;
+import com.example.cs_agent_service.config.LlmLimiterProperties;
+import com.example.cs_agent_service.config.LlmResilienceProperties;
+import com.example.cs_agent_service.config.MessageArchiveProperties;
+import com.example.cs_agent_service.config.MessageBufferProperties;
+import com.example.cs_agent_service.config.PromptProperties;
+import com.example.cs_agent_service.config.RetrievalProperties;
+import com.example.cs_agent_service.config.SemanticCacheProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 
 @SpringBootApplication
-@EnableConfigurationProperties(CacheProperties.class)
+@EnableScheduling
+@EnableConfigurationProperties({
+		CacheProperties.class,
+		RetrievalProperties.class,
+		EmbeddingProperties.class,
+		SemanticCacheProperties.class,
+		MessageBufferProperties.class,
+		ContextWindowProperties.class,
+		ChatBatchProperties.class,
+		LlmLimiterProperties.class,
+		LlmResilienceProperties.class,
+		CacheWarmupProperties.class,
+		PromptProperties.class,
+		KnowledgeChangeProperties.class,
+		ConversationStatusProperties.class,
+		MessageArchiveProperties.class
+})
 public class CsAgentServiceApplication {
 
 
@@ -0,0 +1,36 @@
+package com.example.cs_agent_service.config;
+
+import com.example.cs_agent_service.service.cache.ChatResponseCache;
+import com.example.cs_agent_service.service.cache.ConversationStatusCache;
+import com.example.cs_agent_service.service.cache.KbGenerationService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 只有开启缓存（prod）时才订阅失效频道，dev 环境不依赖 Redis。
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "agent.cache", name = "enabled", havingValue = "true")
+public class CacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListener(
+            RedisConnectionFactory connectionFactory,
+            ChatResponseCache chatResponseCache,
+            KbGenerationService kbGenerationService,
+            ConversationStatusCache conversationStatusCache,
+            CacheProperties cacheProps,
+            ConversationStatusProperties conversationStatusProps
+    ) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(chatResponseCache, new ChannelTopic(cacheProps.getInvalidationChannel()));
+        container.addMessageListener(kbGenerationService, new ChannelTopic(cacheProps.getGenerationChannel()));
+        container.addMessageListener(conversationStatusCache, new ChannelTopic(conversationStatusProps.getChannel()));
+        return container;
+    }
+}
@@ -7,6 +7,27 @@ public class CacheProperties {
     private long ttlSeconds = 600;
     private long refusalTtlSeconds = 30;
     private boolean enabled = false;
+    // 实际 key：{keyPrefix}:g{知识库代际}:{sha256}
+    private String keyPrefix = "agent:chat:v2";
+    // 缓存值为二进制编码（见 ChatResponseCodec），答案达到该字节数时压缩
+    private int compressThresholdBytes = 512;
+
+    // L1: 进程内缓存，存反序列化后的响应
+    private boolean localEnabled = true;
+    private long localMaxEntries = 10_000;
+    private long localTtlSeconds = 60;
+    // 跨节点失效广播频道
+    private String invalidationChannel = "agent:chat:invalidate";
+    private String generationChannel = "agent:kb:generation";
+    // 兜底：pub/sub 丢消息时多久从 Redis 拉一次代际
+    private long generationPollMs = 10_000;
+
+    // 请求合并：本节点 single-flight，可选 Redis 锁跨节点合并
+    private boolean coalesceEnabled = true;
+    private boolean distributedLock = false;
+    private long lockTtlSeconds = 60;
+    private long lockWaitMs = 45_000;
+    private long lockPollMs = 100;
 
     public long getTtlSeconds() { return ttlSeconds; }
     public void setTtlSeconds(long ttlSeconds) { this.ttlSeconds = ttlSeconds; }
@@ -16,4 +37,43 @@ public class CacheProperties {
 
     public boolean isEnabled() { return enabled; }
 public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public String getKeyPrefix() { return keyPrefix; }
+    public void setKeyPrefix(String keyPrefix) { this.keyPrefix = keyPrefix; }
+
+    public int getCompressThresholdBytes() { return compressThresholdBytes; }
+    public void setCompressThresholdBytes(int compressThresholdBytes) { this.compressThresholdBytes = compressThresholdBytes; }
+
+    public boolean isLocalEnabled() { return localEnabled; }
+    public void setLocalEnabled(boolean localEnabled) { this.localEnabled = localEnabled; }
+
+    public long getLocalMaxEntries() { return localMaxEntries; }
+    public void setLocalMaxEntries(long localMaxEntries) { this.localMaxEntries = localMaxEntries; }
+
+    public long getLocalTtlSeconds() { return localTtlSeconds; }
+    public void setLocalTtlSeconds(long localTtlSeconds) { this.localTtlSeconds = localTtlSeconds; }
+
+    public String getInvalidationChannel() { return invalidationChannel; }
+    public void setInvalidationChannel(String invalidationChannel) { this.invalidationChannel = invalidationChannel; }
+
+    public String getGenerationChannel() { return generationChannel; }
+    public void setGenerationChannel(String generationChannel) { this.generationChannel = generationChannel; }
+
+    public long getGenerationPollMs() { return generationPollMs; }
+    public void setGenerationPollMs(long generationPollMs) { this.generationPollMs = generationPollMs; }
+
+    public boolean isCoalesceEnabled() { return coalesceEnabled; }
+    public void setCoalesceEnabled(boolean coalesceEnabled) { this.coalesceEnabled = coalesceEnabled; }
+
+    public boolean isDistributedLock() { return distributedLock; }
+    public void setDistributedLock(boolean distributedLock) { this.distributedLock = distributedLock; }
+
+    public long getLockTtlSeconds() { return lockTtlSeconds; }
+    public void setLockTtlSeconds(long lockTtlSeconds) { this.lockTtlSeconds = lockTtlSeconds; }
+
+    public long getLockWaitMs() { return lockWaitMs; }
+    public void setLockWaitMs(long lockWaitMs) { this.lockWaitMs = lockWaitMs; }
+
+    public long getLockPollMs() { return lockPollMs; }
+    public void setLockPollMs(long lockPollMs) { this.lockPollMs = lockPollMs; }
 }
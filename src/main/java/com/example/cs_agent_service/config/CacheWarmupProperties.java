@@ -0,0 +1,32 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.cache-warmup")
+public class CacheWarmupProperties {
+    // 启动后用知识库标准问题预热问答缓存（需同时开启 agent.cache.enabled）
+    private boolean enabled = false;
+    // 只预热 id 最小的前 N 条 active 条目，0 表示全部
+    private int topN = 0;
+    // 预热占用的 LLM 并发数，避免挤占线上流量
+    private int concurrency = 4;
+    // 已预热比例达到该值 readiness 才为 UP
+    private double readyFraction = 0.8;
+    // 预热开始后超过该时间无论比例多少都放行，防止 LLM 故障时实例永远不 ready
+    private long maxWaitSeconds = 600;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public int getTopN() { return topN; }
+    public void setTopN(int topN) { this.topN = topN; }
+
+    public int getConcurrency() { return concurrency; }
+    public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+
+    public double getReadyFraction() { return readyFraction; }
+    public void setReadyFraction(double readyFraction) { this.readyFraction = readyFraction; }
+
+    public long getMaxWaitSeconds() { return maxWaitSeconds; }
+    public void setMaxWaitSeconds(long maxWaitSeconds) { this.maxWaitSeconds = maxWaitSeconds; }
+}
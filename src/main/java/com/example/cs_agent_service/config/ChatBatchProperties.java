@@ -0,0 +1,12 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.chat-batch")
+public class ChatBatchProperties {
+    // 单个批量请求同时在途的 LLM 调用数（缓存命中与拒答不占名额）
+    private int concurrency = 8;
+
+    public int getConcurrency() { return concurrency; }
+    public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+}
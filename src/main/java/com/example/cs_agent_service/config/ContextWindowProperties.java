@@ -0,0 +1,25 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.context-window")
+public class ContextWindowProperties {
+    // 每个会话放进 prompt 的历史消息上限（条数与估算 token 数，先到先截断）
+    private int maxMessages = 12;
+    private int tokenBudget = 1_500;
+    // 内存中最多保留的会话窗口数，以及空闲多久后释放
+    private int maxConversations = 10_000;
+    private long idleMinutes = 30;
+
+    public int getMaxMessages() { return maxMessages; }
+    public void setMaxMessages(int maxMessages) { this.maxMessages = maxMessages; }
+
+    public int getTokenBudget() { return tokenBudget; }
+    public void setTokenBudget(int tokenBudget) { this.tokenBudget = tokenBudget; }
+
+    public int getMaxConversations() { return maxConversations; }
+    public void setMaxConversations(int maxConversations) { this.maxConversations = maxConversations; }
+
+    public long getIdleMinutes() { return idleMinutes; }
+    public void setIdleMinutes(long idleMinutes) { this.idleMinutes = idleMinutes; }
+}
@@ -0,0 +1,31 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.conversation-status")
+public class ConversationStatusProperties {
+    // false 时每次写消息都查库
+    private boolean enabled = true;
+    private long maxEntries = 100_000;
+    // OPEN 可能被其他节点关闭：关闭广播丢失时最多这么久后重新查库
+    private long openTtlSeconds = 30;
+    // CLOSED 是终态，可以缓存更久
+    private long closedTtlSeconds = 3600;
+    // 跨节点关闭广播频道（需 agent.cache.enabled=true）
+    private String channel = "agent:conversation:closed";
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getMaxEntries() { return maxEntries; }
+    public void setMaxEntries(long maxEntries) { this.maxEntries = maxEntries; }
+
+    public long getOpenTtlSeconds() { return openTtlSeconds; }
+    public void setOpenTtlSeconds(long openTtlSeconds) { this.openTtlSeconds = openTtlSeconds; }
+
+    public long getClosedTtlSeconds() { return closedTtlSeconds; }
+    public void setClosedTtlSeconds(long closedTtlSeconds) { this.closedTtlSeconds = closedTtlSeconds; }
+
+    public String getChannel() { return channel; }
+    public void setChannel(String channel) { this.channel = channel; }
+}
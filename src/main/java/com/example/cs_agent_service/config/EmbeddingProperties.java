@@ -0,0 +1,20 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.embedding")
+public class EmbeddingProperties {
+    // local：本地特征哈希（离线、确定性）；dashscope：调用 /embeddings 接口
+    private String provider = "local";
+    private int dimensions = 256;
+    private String model = "text-embedding-v3";
+
+    public String getProvider() { return provider; }
+    public void setProvider(String provider) { this.provider = provider; }
+
+    public int getDimensions() { return dimensions; }
+    public void setDimensions(int dimensions) { this.dimensions = dimensions; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+}
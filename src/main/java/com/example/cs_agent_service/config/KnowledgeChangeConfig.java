@@ -0,0 +1,21 @@
+package com.example.cs_agent_service.config;
+
+import com.example.cs_agent_service.service.cache.RedisCacheService;
+import com.example.cs_agent_service.service.change.InMemoryChangeStream;
+import com.example.cs_agent_service.service.change.KnowledgeChangeStream;
+import com.example.cs_agent_service.service.change.RedisChangeStream;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 知识库变更流的传输方式：dev 默认进程内，prod 走 Redis Stream。
+ */
+@Configuration
+public class KnowledgeChangeConfig {
+
+    @Bean
+    public KnowledgeChangeStream knowledgeChangeStream(KnowledgeChangeProperties props, RedisCacheService redis) {
+        if ("redis".equalsIgnoreCase(props.getTransport())) return new RedisChangeStream(redis, props);
+        return new InMemoryChangeStream(props.getMaxLen());
+    }
+}
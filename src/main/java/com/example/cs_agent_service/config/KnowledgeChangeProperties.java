@@ -0,0 +1,29 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.kb-changes")
+public class KnowledgeChangeProperties {
+    // memory：进程内（单节点 / 测试）；redis：Redis Stream，多节点共享
+    private String transport = "memory";
+    private String streamKey = "agent:kb:changes";
+    // 流的保留条数（redis 为近似裁剪，memory 为精确裁剪）；落后更多的节点靠索引定时全量校验追上
+    private long maxLen = 10_000;
+    private long pollMs = 500;
+    private int batchSize = 100;
+
+    public String getTransport() { return transport; }
+    public void setTransport(String transport) { this.transport = transport; }
+
+    public String getStreamKey() { return streamKey; }
+    public void setStreamKey(String streamKey) { this.streamKey = streamKey; }
+
+    public long getMaxLen() { return maxLen; }
+    public void setMaxLen(long maxLen) { this.maxLen = maxLen; }
+
+    public long getPollMs() { return pollMs; }
+    public void setPollMs(long pollMs) { this.pollMs = pollMs; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+}
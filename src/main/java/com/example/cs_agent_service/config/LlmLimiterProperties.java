@@ -0,0 +1,54 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.llm.limiter")
+public class LlmLimiterProperties {
+    private boolean enabled = true;
+    // 并发上限在 [minLimit, maxLimit] 之间按延迟自适应调整
+    private int initialLimit = 20;
+    private int minLimit = 4;
+    private int maxLimit = 128;
+    // 本次延迟超过基线延迟的倍数即视为拥塞
+    private double latencyTolerance = 2.0;
+    // 拥塞时上限乘以该系数（每个 RTT 最多降一次）
+    private double backoffRatio = 0.9;
+
+    // 超出上限的请求短暂排队，队列满或等待超时直接拒绝
+    private int queueSize = 50;
+    private long maxWaitMs = 1000;
+
+    // 拒绝时：true 用检索到的知识库答案直接回复，false 返回 429
+    private boolean kbFallback = true;
+    private long retryAfterSeconds = 2;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public int getInitialLimit() { return initialLimit; }
+    public void setInitialLimit(int initialLimit) { this.initialLimit = initialLimit; }
+
+    public int getMinLimit() { return minLimit; }
+    public void setMinLimit(int minLimit) { this.minLimit = minLimit; }
+
+    public int getMaxLimit() { return maxLimit; }
+    public void setMaxLimit(int maxLimit) { this.maxLimit = maxLimit; }
+
+    public double getLatencyTolerance() { return latencyTolerance; }
+    public void setLatencyTolerance(double latencyTolerance) { this.latencyTolerance = latencyTolerance; }
+
+    public double getBackoffRatio() { return backoffRatio; }
+    public void setBackoffRatio(double backoffRatio) { this.backoffRatio = backoffRatio; }
+
+    public int getQueueSize() { return queueSize; }
+    public void setQueueSize(int queueSize) { this.queueSize = queueSize; }
+
+    public long getMaxWaitMs() { return maxWaitMs; }
+    public void setMaxWaitMs(long maxWaitMs) { this.maxWaitMs = maxWaitMs; }
+
+    public boolean isKbFallback() { return kbFallback; }
+    public void setKbFallback(boolean kbFallback) { this.kbFallback = kbFallback; }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+    public void setRetryAfterSeconds(long retryAfterSeconds) { this.retryAfterSeconds = retryAfterSeconds; }
+}
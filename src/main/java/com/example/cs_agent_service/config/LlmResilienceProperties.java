@@ -0,0 +1,74 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按模型配置的对冲请求与熔断策略：models.{模型名} 为该模型的完整策略（未写的字段取内置默认值），
+ * 未单独配置的模型使用 defaults。
+ */
+@ConfigurationProperties(prefix = "agent.llm.resilience")
+public class LlmResilienceProperties {
+    private Policy defaults = new Policy();
+    private Map<String, Policy> models = new HashMap<>();
+
+    public Policy forModel(String model) {
+        return models.getOrDefault(model, defaults);
+    }
+
+    public Policy getDefaults() { return defaults; }
+    public void setDefaults(Policy defaults) { this.defaults = defaults; }
+
+    public Map<String, Policy> getModels() { return models; }
+    public void setModels(Map<String, Policy> models) { this.models = models; }
+
+    public static class Policy {
+        // 对冲：首个请求超过近期延迟的 hedge-percentile 分位仍未返回时，再发一个，先返回者胜出
+        private boolean hedgeEnabled = false;
+        private double hedgePercentile = 0.95;
+        // 对冲延迟下限，避免延迟样本很小时几乎每个请求都发两次
+        private long hedgeMinDelayMs = 1000;
+        // 样本数不足时不对冲
+        private int hedgeMinSamples = 50;
+
+        // 熔断：最近 breaker-window 次调用中失败率达到阈值即打开，open-ms 后放行少量试探请求
+        private boolean breakerEnabled = true;
+        private int breakerWindow = 50;
+        private int breakerMinCalls = 20;
+        private double breakerFailureRate = 0.5;
+        private long breakerOpenMs = 30_000;
+        private int breakerHalfOpenCalls = 3;
+
+        public boolean isHedgeEnabled() { return hedgeEnabled; }
+        public void setHedgeEnabled(boolean hedgeEnabled) { this.hedgeEnabled = hedgeEnabled; }
+
+        public double getHedgePercentile() { return hedgePercentile; }
+        public void setHedgePercentile(double hedgePercentile) { this.hedgePercentile = hedgePercentile; }
+
+        public long getHedgeMinDelayMs() { return hedgeMinDelayMs; }
+        public void setHedgeMinDelayMs(long hedgeMinDelayMs) { this.hedgeMinDelayMs = hedgeMinDelayMs; }
+
+        public int getHedgeMinSamples() { return hedgeMinSamples; }
+        public void setHedgeMinSamples(int hedgeMinSamples) { this.hedgeMinSamples = hedgeMinSamples; }
+
+        public boolean isBreakerEnabled() { return breakerEnabled; }
+        public void setBreakerEnabled(boolean breakerEnabled) { this.breakerEnabled = breakerEnabled; }
+
+        public int getBreakerWindow() { return breakerWindow; }
+        public void setBreakerWindow(int breakerWindow) { this.breakerWindow = breakerWindow; }
+
+        public int getBreakerMinCalls() { return breakerMinCalls; }
+        public void setBreakerMinCalls(int breakerMinCalls) { this.breakerMinCalls = breakerMinCalls; }
+
+        public double getBreakerFailureRate() { return breakerFailureRate; }
+        public void setBreakerFailureRate(double breakerFailureRate) { this.breakerFailureRate = breakerFailureRate; }
+
+        public long getBreakerOpenMs() { return breakerOpenMs; }
+        public void setBreakerOpenMs(long breakerOpenMs) { this.breakerOpenMs = breakerOpenMs; }
+
+        public int getBreakerHalfOpenCalls() { return breakerHalfOpenCalls; }
+        public void setBreakerHalfOpenCalls(int breakerHalfOpenCalls) { this.breakerHalfOpenCalls = breakerHalfOpenCalls; }
+    }
+}
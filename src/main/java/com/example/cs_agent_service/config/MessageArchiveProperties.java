@@ -0,0 +1,30 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.archive")
+public class MessageArchiveProperties {
+    private boolean enabled = true;
+    // 会话关闭超过这么久后，消息移入冷存储
+    private long retentionHours = 720;
+    private long intervalMs = 600_000;
+    // 每轮最多归档的会话数；积压会在之后几轮消化，避免长时间占用调度线程
+    private int batchSize = 50;
+    // 每个归档块的消息数
+    private int chunkSize = 500;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public long getRetentionHours() { return retentionHours; }
+    public void setRetentionHours(long retentionHours) { this.retentionHours = retentionHours; }
+
+    public long getIntervalMs() { return intervalMs; }
+    public void setIntervalMs(long intervalMs) { this.intervalMs = intervalMs; }
+
+    public int getBatchSize() { return batchSize; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+    public int getChunkSize() { return chunkSize; }
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+}
@@ -0,0 +1,35 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.message-buffer")
+public class MessageBufferProperties {
+    // 队列满时新消息直接拒绝（503），由客户端重试
+    private int capacity = 10_000;
+    // 单条 INSERT 的最大行数
+    private int maxBatch = 500;
+    private long flushIntervalMs = 200;
+    // 同一批连续失败次数达到上限后改为逐行写入，隔离坏数据
+    private int maxRetries = 3;
+    // 各节点把自己的进度写到 {progressKeyPrefix}:{node}（需开启 agent.cache），任一节点都能查询回执
+    private String progressKeyPrefix = "agent:ingest:progress";
+    private long progressTtlSeconds = 86_400;
+
+    public int getCapacity() { return capacity; }
+    public void setCapacity(int capacity) { this.capacity = capacity; }
+
+    public int getMaxBatch() { return maxBatch; }
+    public void setMaxBatch(int maxBatch) { this.maxBatch = maxBatch; }
+
+    public long getFlushIntervalMs() { return flushIntervalMs; }
+    public void setFlushIntervalMs(long flushIntervalMs) { this.flushIntervalMs = flushIntervalMs; }
+
+    public int getMaxRetries() { return maxRetries; }
+    public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+
+    public String getProgressKeyPrefix() { return progressKeyPrefix; }
+    public void setProgressKeyPrefix(String progressKeyPrefix) { this.progressKeyPrefix = progressKeyPrefix; }
+
+    public long getProgressTtlSeconds() { return progressTtlSeconds; }
+    public void setProgressTtlSeconds(long progressTtlSeconds) { this.progressTtlSeconds = progressTtlSeconds; }
+}
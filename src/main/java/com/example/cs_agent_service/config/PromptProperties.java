@@ -0,0 +1,22 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.prompt")
+public class PromptProperties {
+    // “已知信息”部分的 token 上限（估算值），按相关度从高到低填入检索到的答案
+    private int contextTokenBudget = 1_000;
+    // 得分低于最高分该比例的条目直接丢弃（最高分条目始终保留）
+    private double minScoreRatio = 0.2;
+    // 剩余预算不足该值时不再截断塞入，直接丢弃
+    private int minTruncatedTokens = 40;
+
+    public int getContextTokenBudget() { return contextTokenBudget; }
+    public void setContextTokenBudget(int contextTokenBudget) { this.contextTokenBudget = contextTokenBudget; }
+
+    public double getMinScoreRatio() { return minScoreRatio; }
+    public void setMinScoreRatio(double minScoreRatio) { this.minScoreRatio = minScoreRatio; }
+
+    public int getMinTruncatedTokens() { return minTruncatedTokens; }
+    public void setMinTruncatedTokens(int minTruncatedTokens) { this.minTruncatedTokens = minTruncatedTokens; }
+}
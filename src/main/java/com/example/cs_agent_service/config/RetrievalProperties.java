@@ -0,0 +1,54 @@
+package com.example.cs_agent_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "agent.retrieval")
+public class RetrievalProperties {
+    // 关闭后退回 LIKE 查询
+    private boolean indexEnabled = true;
+    // 命中的 n-gram 权重占问题总权重的最低比例，低于此值视为不相关
+    private double minCoverage = 0.35;
+    // 全量重建间隔（兜底其他节点的知识库修改）
+    private long refreshIntervalMs = 300_000;
+    // 倒排索引快照文件，启动时未过期则直接 mmap；留空不落盘
+    private String snapshotPath = "";
+
+    // lexical：只用 n-gram 索引 / LIKE；vector：只用向量检索；hybrid：两路结果做 RRF 融合
+    private String mode = "lexical";
+    // 向量命中的最低余弦相似度，低于此值不算命中（拒答闸门依赖它）；换用 dashscope 向量时需重新校准
+    private double vectorMinSimilarity = 0.45;
+    // HNSW 参数：每层邻居数、建图与检索时的候选宽度
+    private int hnswM = 16;
+    private int hnswEfConstruction = 100;
+    private int hnswEfSearch = 64;
+
+    public boolean isIndexEnabled() { return indexEnabled; }
+    public void setIndexEnabled(boolean indexEnabled) { this.indexEnabled = indexEnabled; }
+
+    public double getMinCoverage() { return minCoverage; }
+    public void setMinCoverage(double minCoverage) { this.minCoverage = minCoverage; }
+
+    public long getRefreshIntervalMs() { return refreshIntervalMs; }
+    public void setRefreshIntervalMs(long refreshIntervalMs) { this.refreshIntervalMs = refreshIntervalMs; }
+
+    public String getSnapshotPath() { return snapshotPath; }
+    public void setSnapshotPath(String snapshotPath) { this.snapshotPath = snapshotPath; }
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+
+    public boolean isVectorEnabled() { return "vector".equalsIgnoreCase(mode) || "hybrid".equalsIgnoreCase(mode); }
+    public boolean isLexicalEnabled() { return !"vector".equalsIgnoreCase(mode); }
+
+    public double getVectorMinSimilarity() { return vectorMinSimilarity; }
+    public void setVectorMinSimilarity(double vectorMinSimilarity) { this.vectorMinSimilarity = vectorMinSimilarity; }
+
+    public int getHnswM() { return hnswM; }
+    public void setHnswM(int hnswM) { this.hnswM = hnswM; }
+
+    public int getHnswEfConstruction() { return hnswEfConstruction; }
+    public void setHnswEfConstruction(int hnswEfConstruction) { this.hnswEfConstruction = hnswEfConstruction; }
+
+    public int getHnswEfSearch() { return hnswEfSearch; }
+    public void setHnswEfSearch(int hnswEfSearch) { this.hnswEfSearch = hnswEfSearch; }
+}
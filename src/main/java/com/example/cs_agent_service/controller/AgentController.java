@@ -1,164 +1,126 @@
 package com.example.cs_agent_service.controller;
 
-import com.example.cs_agent_service.config.CacheProperties;
-import com.example.cs_agent_service.entity.KnowledgeBase;
-import com.example.cs_agent_service.service.KnowledgeBaseService;
-import com.example.cs_agent_service.service.ai.DashScopeClient;
-import com.example.cs_agent_service.service.cache.RedisCacheService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.cs_agent_service.dto.ChatBatchRequest;
+import com.example.cs_agent_service.dto.ChatResponse;
+import com.example.cs_agent_service.dto.ConversationChatRequest;
+import com.example.cs_agent_service.service.ChatService;
+import com.example.cs_agent_service.service.ConversationChatService;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
 @RequestMapping("/api/agent")
 public class AgentController {
 
-    private final KnowledgeBaseService knowledgeBaseService;
-    private final DashScopeClient dashScopeClient;
-    private final RedisCacheService cache;
-    private final CacheProperties cacheProps;
-    private final ObjectMapper objectMapper;
+    // 流式连接最长保持时间
+    private static final long STREAM_TIMEOUT_MS = 180_000;
     private static final Logger log = LoggerFactory.getLogger(AgentController.class);
 
+    private final ChatService chatService;
+    private final ConversationChatService conversationChatService;
 
-    public AgentController(
-            KnowledgeBaseService knowledgeBaseService,
-            DashScopeClient dashScopeClient,
-            RedisCacheService cache,
-            CacheProperties cacheProps,
-            ObjectMapper objectMapper
-    ) {
-        this.knowledgeBaseService = knowledgeBaseService;
-        this.dashScopeClient = dashScopeClient;
-        this.cache = cache;
-        this.cacheProps = cacheProps;
-        this.objectMapper = objectMapper;
+    public AgentController(ChatService chatService, ConversationChatService conversationChatService) {
+        this.chatService = chatService;
+        this.conversationChatService = conversationChatService;
     }
 
+    /**
+     * 返回 CompletableFuture：等待 LLM 期间释放 servlet 线程（超时见 spring.mvc.async.request-timeout）。
+     */
     @GetMapping("/chat")
     @Operation(summary = "智能客服问答测试")
-    public Map<String, Object> chat(@RequestParam("question") String question) {
+    public CompletableFuture<ChatResponse> chat(@RequestParam("question") String question) {
         if (question == null || question.trim().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "question 不能为空");
         }
-
-        String q = question.trim();
-        log.info("[chat] q='{}' cacheEnabled={}", q, cacheProps.isEnabled());
-        String cacheKey = buildCacheKey(q);
-
-        // 1) Cache lookup (hit -> return immediately)
-        if (cacheProps.isEnabled()) {
-            Optional<String> cached = cache.get(cacheKey);
-            if (cached.isPresent()) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> resp = objectMapper.readValue(cached.get(), Map.class);
-                    log.info("[chat] cache=HIT key={}", cacheKey);
-                    return resp;
-                } catch (Exception ignored) {
-
-                    // 解析失败视为 cache miss，继续走主链路
-                }
-            }
-            log.info("[chat] cache=MISS key={}", cacheKey);
-        }
-
-        // 2) Retrieval
-        List<KnowledgeBase> hits = knowledgeBaseService.searchTop5(q);
-
-        // 3) Refusal gate (hits == 0 -> no LLM call)
-        if (hits == null || hits.isEmpty()) {
-            Map<String, Object> resp = new LinkedHashMap<>();
-            resp.put("answer", "抱歉，小云暂时还没学会这个问题");
-            resp.put("hits", 0);
-
-            // refusal cache: very short TTL (optional)
-            writeCacheSafely(cacheKey, resp, cacheProps.getRefusalTtlSeconds());
-            log.info("[chat] cache=REFUSAL key={}", cacheKey);
-            return resp;
-        }
-
-        // 4) Prompt assembly
-        String systemMsg = """
-            你是网易云音乐智能客服小云，请用亲切活泼的语气回答。
-            必须优先基于【已知信息】回答；
-            如果已知信息不足，就回答：'抱歉，小云暂时还没学会这个问题'。
-            不要编造事实。
-        """.trim();
-
-        StringBuilder known = new StringBuilder();
-        known.append("已知信息：\n");
-        for (int i = 0; i < hits.size(); i++) {
-            String ans = hits.get(i).getAnswer();
-            if (ans == null) ans = "";
-            known.append("[").append(i + 1).append("] ").append(ans).append("\n");
-        }
-        known.append("用户问题：").append(q);
-        
-        // 5) LLM inference
-        log.info("[chat] retrieval hits={} llm=CALL", hits.size());
-        String answer = dashScopeClient.call(systemMsg, known.toString());
-
-        // 6) Response
-        Map<String, Object> resp = new LinkedHashMap<>();
-        resp.put("answer", answer);
-        resp.put("hits", hits.size());
-
-        // 7) Write-back cache with normal TTL
-        writeCacheSafely(cacheKey, resp, cacheProps.getTtlSeconds()); 
-        return resp;
+        return chatService.chatAsync(question.trim());
     }
 
     /**
-     * Cache key: versioned + sha256(question.trim()) to avoid special chars / huge keys.
+     * 批量问答（离线任务用）：results 与 questions 一一对应，单个失败的问题为 error 字段（hits 为 0）。
      */
-    private String buildCacheKey(String question) {
-        String normalized = question.trim();
-        return "agent:chat:v1:" + sha256Hex(normalized);
+    @PostMapping("/chat/batch")
+    @Operation(summary = "批量问答")
+    public CompletableFuture<Map<String, Object>> chatBatch(@Valid @RequestBody ChatBatchRequest req) {
+        List<String> questions = req.questions().stream().map(String::trim).toList();
+        return chatService.chatBatch(questions).thenApply(results -> Map.of("results", results));
     }
 
-    private String sha256Hex(String s) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(s.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) {
-            // extreme fallback: still works, just less safe for redis key
-            return s;
-        }
+    /**
+     * 会话内多轮问答：带上该会话最近的历史，问答双方作为消息保存；响应额外包含 messageId。
+     */
+    @PostMapping("/conversations/{conversationId}/chat")
+    @Operation(summary = "会话内多轮问答")
+    public CompletableFuture<Map<String, Object>> conversationChat(
+            @PathVariable Long conversationId,
+            @Valid @RequestBody ConversationChatRequest req
+    ) {
+        return conversationChatService.chat(conversationId, req.question().trim());
     }
 
     /**
-     * Never break main flow: cache errors must be ignored.
+     * SSE 事件：delta（增量文本，可多次） -> done（完整响应，同 /chat）；失败时发送 error。
      */
-    private void writeCacheSafely(String key, Map<String, Object> resp, long ttlSeconds) {
-        if (!cacheProps.isEnabled()) return;
-        if (ttlSeconds <= 0) return;
+    @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "智能客服问答（流式 SSE）")
+    public SseEmitter chatStream(@RequestParam("question") String question) {
+        if (question == null || question.trim().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "question 不能为空");
+        }
+
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        chatService.chatStream(question.trim(), new ChatService.StreamListener() {
+            @Override
+            public void onDelta(String text) {
+                send(emitter, SseEmitter.event().name("delta").data(text));
+            }
+
+            @Override
+            public void onDone(ChatResponse resp) {
+                send(emitter, SseEmitter.event().name("done").data(resp, MediaType.APPLICATION_JSON));
+                emitter.complete();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.warn("[chat-stream] failed: {}", error.getMessage());
+                try {
+                    emitter.send(SseEmitter.event().name("error").data("服务暂时不可用，请稍后重试"));
+                } catch (Exception ignored) {
+                    // 客户端已断开
+                }
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
 
+    private static void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
         try {
-            String json = objectMapper.writeValueAsString(resp);
-            log.info("[chat] cache=WRITE key={} ttl={}s", key, ttlSeconds);
-            cache.set(key, json, ttlSeconds);
-        } catch (Exception ignored) {
-            // ignore all to keep main flow stable
+            emitter.send(event);
+        } catch (IOException e) {
+            // 客户端断开：抛出以取消上游流
+            throw new UncheckedIOException(e);
         }
     }
 }
@@ -3,10 +3,20 @@ package com.example.cs_agent_service.controller;
 import com.example.cs_agent_service.dto.ConversationResponse;
 import com.example.cs_agent_service.dto.CreateConversationRequest;
 import com.example.cs_agent_service.service.ConversationService;
+import com.example.cs_agent_service.service.ingest.MessageWriteBuffer;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import com.example.cs_agent_service.dto.AddMessageRequest;
+import com.example.cs_agent_service.dto.BulkAppendResponse;
+import com.example.cs_agent_service.dto.MessageAck;
+import com.example.cs_agent_service.dto.MessageBufferStatus;
 import com.example.cs_agent_service.dto.MessageResponse;
 import java.util.List;
 
@@ -16,9 +26,11 @@ import java.util.List;
 public class ConversationController {
 
     private final ConversationService service;
+    private final MessageWriteBuffer writeBuffer;
 
-    public ConversationController(ConversationService service) {
+    public ConversationController(ConversationService service, MessageWriteBuffer writeBuffer) {
         this.service = service;
+        this.writeBuffer = writeBuffer;
     }
 
     @PostMapping("/{id}/messages")
@@ -26,9 +38,49 @@ public class ConversationController {
         return service.addMessage(id, req);
     }
 
+    /**
+     * 同步批量追加，200 表示已落库。
+     */
+    @PostMapping("/{id}/messages/bulk")
+    public BulkAppendResponse appendMessages(
+            @PathVariable Long id,
+            @RequestBody @NotEmpty @Size(max = 1000) List<@Valid AddMessageRequest> reqs
+    ) {
+        return service.appendMessages(id, reqs);
+    }
+
+    /**
+     * 缓冲写入：202 表示已接收（未落库），队列满时 503 + Retry-After。
+     */
+    @PostMapping("/{id}/messages/buffered")
+    public ResponseEntity<MessageAck> bufferMessage(@PathVariable Long id, @Valid @RequestBody AddMessageRequest req) {
+        return service.bufferMessage(id, req)
+                .map(ack -> ResponseEntity.status(HttpStatus.ACCEPTED).body(ack))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .build());
+    }
+
+    /**
+     * 传回执中的 node：该 node 的 durableSequence >= 回执中的 sequence 时，该消息已落库。
+     * 任一节点都能回答；node 未知（已重启或已下线，队列中的消息可能已丢失）时 404。
+     */
+    @GetMapping("/messages/buffer")
+    public MessageBufferStatus bufferStatus(@RequestParam(required = false) String node) {
+        return writeBuffer.status(node)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown buffer node"));
+    }
+
+    /**
+     * afterId 为游标（上一页最后一条 / 客户端已见到的最大 id），limit 默认 50、最大 200。
+     */
     @GetMapping("/{id}/messages")
-    public List<MessageResponse> listMessages(@PathVariable Long id) {
-        return service.listMessages(id);
+    public List<MessageResponse> listMessages(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return service.listMessages(id, afterId, limit);
     }
 
     @PostMapping
@@ -2,15 +2,21 @@ package com.example.cs_agent_service.controller;
 
 import com.example.cs_agent_service.dto.CreateKnowledgeBaseRequest;
 import com.example.cs_agent_service.dto.KnowledgeBaseResponse;
+import com.example.cs_agent_service.dto.KnowledgeImportReport;
 import com.example.cs_agent_service.dto.UpdateKnowledgeBaseRequest;
 import com.example.cs_agent_service.service.KnowledgeBaseService;
+import com.example.cs_agent_service.service.importing.KnowledgeImportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -19,9 +25,11 @@ import java.util.List;
 public class KnowledgeBaseController {
 
     private final KnowledgeBaseService service;
+    private final KnowledgeImportService importService;
 
-    public KnowledgeBaseController(KnowledgeBaseService service) {
+    public KnowledgeBaseController(KnowledgeBaseService service, KnowledgeImportService importService) {
         this.service = service;
+        this.importService = importService;
     }
 
     @PostMapping
@@ -59,4 +67,18 @@ public class KnowledgeBaseController {
     public void deactivate(@PathVariable @Parameter(description = "知识库ID") Long id) {
         service.deactivate(id);
     }
-}
\ No newline at end of file
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @Operation(summary = "批量导入知识库（CSV）",
+            description = "UTF-8 CSV，首行表头需包含 question、answer，keywords 可选；逐行校验，返回成功数与失败明细")
+    public KnowledgeImportReport importCsv(InputStream body) {
+        return importService.importCsv(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "批量导入知识库（NDJSON）",
+            description = "每行一个 {\"question\",\"answer\",\"keywords\"} 对象；逐行校验，返回成功数与失败明细")
+    public KnowledgeImportReport importNdjson(InputStream body) {
+        return importService.importNdjson(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+}
@@ -3,8 +3,10 @@ package com.example.cs_agent_service.dto;
 import com.example.cs_agent_service.entity.MessageSender;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
 public record AddMessageRequest(
         @NotNull MessageSender sender,
-        @NotBlank String content
+        // 与 messages.content 列长度一致
+        @NotBlank @Size(max = 2000) String content
 ) {}
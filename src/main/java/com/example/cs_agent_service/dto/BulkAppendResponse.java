@@ -0,0 +1,8 @@
+package com.example.cs_agent_service.dto;
+
+/**
+ * 批量追加已在同一事务内落库；新消息可用 afterId 游标分页读取。
+ */
+public record BulkAppendResponse(
+        int appended
+) {}
@@ -0,0 +1,12 @@
+package com.example.cs_agent_service.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record ChatBatchRequest(
+        @NotEmpty @Size(max = 100)
+        List<@NotBlank(message = "question 不能为空") @Size(max = 2000) String> questions
+) {}
@@ -0,0 +1,34 @@
+package com.example.cs_agent_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 问答响应（/chat、流式 done 事件、/chat/batch 的每一项）。degraded / error 只在出现时输出。
+ */
+public record ChatResponse(
+        @JsonInclude(JsonInclude.Include.NON_NULL) String answer,
+        int hits,
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean degraded,
+        @JsonInclude(JsonInclude.Include.NON_NULL) String error
+) {
+    public static ChatResponse of(String answer, int hits) {
+        return new ChatResponse(answer, hits, false, null);
+    }
+
+    /**
+     * LLM 不可用时用知识库答案直接回复，不写缓存。
+     */
+    public static ChatResponse degraded(String answer, int hits) {
+        return new ChatResponse(answer, hits, true, null);
+    }
+
+    public static ChatResponse failed(String error) {
+        return new ChatResponse(null, 0, false, error);
+    }
+
+    @JsonIgnore
+    public boolean isRefusal() {
+        return hits == 0 && error == null;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.cs_agent_service.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+public record ConversationChatRequest(
+        @NotBlank(message = "question 不能为空")
+        @Size(max = 2000) String question
+) {}
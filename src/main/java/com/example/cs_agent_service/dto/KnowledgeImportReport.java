@@ -0,0 +1,34 @@
+package com.example.cs_agent_service.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "知识库批量导入结果")
+public record KnowledgeImportReport(
+        @Schema(description = "读取的数据行数（不含表头）", example = "20000")
+        long total,
+
+        @Schema(description = "成功写入的条数", example = "19998")
+        long imported,
+
+        @Schema(description = "失败的条数", example = "2")
+        long failed,
+
+        @Schema(description = "耗时（毫秒）", example = "1830")
+        long elapsedMs,
+
+        @Schema(description = "失败明细（最多返回前 100 条）")
+        List<RowError> errors
+) {
+
+    @Schema(description = "单行导入失败原因")
+    public record RowError(
+            @Schema(description = "数据行号，从 1 开始", example = "42")
+            long row,
+
+            @Schema(description = "失败原因", example = "回答不能为空")
+            String message
+    ) {
+    }
+}
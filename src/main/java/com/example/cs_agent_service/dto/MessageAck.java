@@ -0,0 +1,13 @@
+package com.example.cs_agent_service.dto;
+
+/**
+ * 缓冲写入的回执：ACCEPTED 只表示已进入 node 的内存队列；
+ * 当该 node 的 {@link MessageBufferStatus#durableSequence()} >= sequence 时才已落库。
+ *
+ * @param node 接收消息的进程实例（重启后会变），序号只在同一 node 内有意义
+ */
+public record MessageAck(
+        String status,
+        String node,
+        long sequence
+) {}
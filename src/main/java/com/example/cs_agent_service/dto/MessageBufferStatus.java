@@ -0,0 +1,15 @@
+package com.example.cs_agent_service.dto;
+
+/**
+ * @param node             进程实例；查询其他节点时是它最近一次 flush 后上报的进度
+ * @param acceptedSequence 最近一次接收的序号
+ * @param durableSequence  该序号及之前的消息都已处理完（落库，或因坏数据、会话已关闭被丢弃并计入 dropped）
+ */
+public record MessageBufferStatus(
+        String node,
+        long acceptedSequence,
+        long durableSequence,
+        int queued,
+        int capacity,
+        long dropped
+) {}
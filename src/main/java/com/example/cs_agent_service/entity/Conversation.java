@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "conversations")
+// 归档任务按状态 + 关闭时间找候选会话
+@Table(name = "conversations",
+        indexes = @Index(name = "idx_conversations_status_updated_at", columnList = "status, updated_at"))
 public class Conversation {
 
     @Id
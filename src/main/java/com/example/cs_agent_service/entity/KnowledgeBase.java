@@ -34,6 +34,15 @@ public class KnowledgeBase {
     @Schema(description = "创建时间")
     private LocalDateTime createTime;
 
+    @Schema(description = "最后修改时间")
+    private LocalDateTime updateTime;
+
+    // 乐观锁版本：并发修改同一条目时后提交的失败；也用于丢弃迟到的变更事件
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    @Schema(description = "版本号")
+    private long version;
+
     @PrePersist
     public void prePersist() {
         this.createTime = LocalDateTime.now();
@@ -42,6 +51,11 @@ public class KnowledgeBase {
         }
     }
 
+    @PreUpdate
+    public void preUpdate() {
+        this.updateTime = LocalDateTime.now();
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -90,4 +104,20 @@ public class KnowledgeBase {
     public void setCreateTime(LocalDateTime createTime) {
         this.createTime = createTime;
     }
+
+    public LocalDateTime getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(LocalDateTime updateTime) {
+        this.updateTime = updateTime;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
\ No newline at end of file
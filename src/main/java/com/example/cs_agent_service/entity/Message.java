@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "messages")
+// 按会话做 keyset 分页：WHERE conversation_id = ? AND id > ? ORDER BY id
+@Table(name = "messages",
+        indexes = @Index(name = "idx_messages_conversation_id_id", columnList = "conversation_id, id"))
 public class Message {
 
     @Id
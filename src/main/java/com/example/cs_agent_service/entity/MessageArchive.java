@@ -0,0 +1,71 @@
+package com.example.cs_agent_service.entity;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * 冷数据：已关闭会话的消息按 id 顺序分块压缩存放，每行一块（格式见 MessageArchiveCodec）。
+ * 同一会话的块按 id 区间首尾相接、互不重叠。
+ */
+@Entity
+// 按会话翻页：WHERE conversation_id = ? AND last_message_id > ? ORDER BY first_message_id
+@Table(name = "message_archive",
+        indexes = @Index(name = "idx_message_archive_conversation_id_last", columnList = "conversation_id, last_message_id"))
+public class MessageArchive {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 会话行保留在 conversations 表，这里只存 id
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(nullable = false)
+    private long firstMessageId;
+
+    @Column(nullable = false)
+    private long lastMessageId;
+
+    @Column(nullable = false)
+    private int messageCount;
+
+    // 压缩前的字节数，用于观察压缩率
+    @Column(nullable = false)
+    private int rawBytes;
+
+    @Lob
+    @Column(nullable = false, length = 16 * 1024 * 1024)
+    private byte[] payload;
+
+    @Column(nullable = false, updatable = false)
+    private Instant archivedAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.archivedAt = Instant.now();
+    }
+
+    // getters / setters
+    public Long getId() { return id; }
+
+    public Long getConversationId() { return conversationId; }
+    public void setConversationId(Long conversationId) { this.conversationId = conversationId; }
+
+    public long getFirstMessageId() { return firstMessageId; }
+    public void setFirstMessageId(long firstMessageId) { this.firstMessageId = firstMessageId; }
+
+    public long getLastMessageId() { return lastMessageId; }
+    public void setLastMessageId(long lastMessageId) { this.lastMessageId = lastMessageId; }
+
+    public int getMessageCount() { return messageCount; }
+    public void setMessageCount(int messageCount) { this.messageCount = messageCount; }
+
+    public int getRawBytes() { return rawBytes; }
+    public void setRawBytes(int rawBytes) { this.rawBytes = rawBytes; }
+
+    public byte[] getPayload() { return payload; }
+    public void setPayload(byte[] payload) { this.payload = payload; }
+
+    public Instant getArchivedAt() { return archivedAt; }
+}
@@ -1,7 +1,37 @@
 package com.example.cs_agent_service.repo;
 
 import com.example.cs_agent_service.entity.Conversation;
+import com.example.cs_agent_service.entity.ConversationStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+
+    /**
+     * 只取状态列，写消息前的校验不需要加载整个实体。
+     */
+    @Query("select c.status from Conversation c where c.id = :id")
+    Optional<ConversationStatus> findStatusById(@Param("id") Long id);
+
+    /**
+     * 关闭早于 cutoff 且热表里还有消息的会话。关闭后会话不再修改，updatedAt 即关闭时间。
+     */
+    @Query("select c.id from Conversation c where c.status = :status and c.updatedAt < :cutoff"
+            + " and exists (select m.id from Message m where m.conversation.id = c.id) order by c.id")
+    List<Long> findArchivable(@Param("status") ConversationStatus status, @Param("cutoff") Instant cutoff, Limit limit);
+
+    /**
+     * 行锁：多个节点同时归档同一会话时串行执行，后到的看到热表已空直接跳过。
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Conversation c where c.id = :id")
+    Optional<Conversation> findForUpdate(@Param("id") Long id);
 }
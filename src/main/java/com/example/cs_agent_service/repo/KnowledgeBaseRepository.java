@@ -7,6 +7,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,6 +16,26 @@ public interface KnowledgeBaseRepository extends JpaRepository<KnowledgeBase, Lo
 
     List<KnowledgeBase> findByActiveTrue();
 
+    /**
+     * 建检索索引只需要这几列，不加载 TEXT 类型的 answer。
+     */
+    @Query("select k.id as id, k.question as question, k.keywords as keywords from KnowledgeBase k where k.active = true")
+    List<IndexSource> findIndexSources();
+
+    long countByActiveTrue();
+
+    /**
+     * 答案写缓存后复核用：只取版本号和启用状态。
+     */
+    @Query("select k.id as id, k.version as version, k.active as active from KnowledgeBase k where k.id in :ids")
+    List<VersionOf> findVersions(@Param("ids") Collection<Long> ids);
+
+    /**
+     * active 条目的最后修改时间（没改过的取创建时间），与 countByActiveTrue 一起判断索引快照是否过期。
+     */
+    @Query("select max(coalesce(k.updateTime, k.createTime)) from KnowledgeBase k where k.active = true")
+    LocalDateTime findLastModified();
+
     /**
      * 根据关键词搜索，模糊匹配问题或关键词字段，只返回启用状态的记录
      */
@@ -36,15 +58,15 @@ public interface KnowledgeBaseRepository extends JpaRepository<KnowledgeBase, Lo
     @Query("SELECT k FROM KnowledgeBase k WHERE k.id = :id AND k.active = true")
     KnowledgeBase findByIdAndActiveTrue(@Param("id") Long id);
 
-    @Query("""
-    select k from KnowledgeBase k
-    where k.active = true and (
-        lower(coalesce(k.question,'')) like lower(concat('%', :q, '%'))
-        or lower(coalesce(k.keywords,'')) like lower(concat('%', :q, '%'))
-        or lower(:q) like lower(concat('%', coalesce(k.question,''), '%'))
-        or lower(:q) like lower(concat('%', coalesce(k.keywords,''), '%'))
-    )
-    
-    """)
-    List<KnowledgeBase> searchFuzzy(@Param("q") String q, Pageable pageable);
+    interface VersionOf {
+        Long getId();
+        long getVersion();
+        Boolean getActive();
+    }
+
+    interface IndexSource {
+        Long getId();
+        String getQuestion();
+        String getKeywords();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.example.cs_agent_service.repo;
+
+import com.example.cs_agent_service.entity.MessageArchive;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface MessageArchiveRepository extends JpaRepository<MessageArchive, Long> {
+
+    /**
+     * 包含 afterId 之后消息的块，按 id 区间升序；走 (conversation_id, last_message_id) 索引。
+     */
+    List<MessageArchive> findByConversationIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(
+            Long conversationId, Long afterId, Limit limit);
+}
@@ -1,9 +1,32 @@
 package com.example.cs_agent_service.repo;
 
 import com.example.cs_agent_service.entity.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findByConversationIdOrderByCreatedAtAsc(Long conversationId);
+
+    /**
+     * keyset 分页：id 严格大于游标，走 (conversation_id, id) 索引，不扫描前面的消息。
+     */
+    List<Message> findByConversationIdAndIdGreaterThanOrderByIdAsc(Long conversationId, Long afterId, Limit limit);
+
+    /**
+     * 会话最近的消息（倒序），同样走 (conversation_id, id) 索引。
+     */
+    List<Message> findByConversationIdOrderByIdDesc(Long conversationId, Limit limit);
+
+    @Query("select max(m.id) from Message m where m.conversation.id = :conversationId")
+    Long findLastIdByConversationId(@Param("conversationId") Long conversationId);
+
+    /**
+     * 归档后删除热表里已进入冷存储的消息（id <= maxId）。
+     */
+    @Modifying
+    @Query("delete from Message m where m.conversation.id = :conversationId and m.id <= :maxId")
+    int deleteArchived(@Param("conversationId") Long conversationId, @Param("maxId") Long maxId);
 }
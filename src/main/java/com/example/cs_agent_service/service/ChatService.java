@@ -0,0 +1,473 @@
+package com.example.cs_agent_service.service;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.ChatBatchProperties;
+import com.example.cs_agent_service.config.LlmLimiterProperties;
+import com.example.cs_agent_service.dto.ChatResponse;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.service.ai.DashScopeClient;
+import com.example.cs_agent_service.service.ai.LlmOverloadedException;
+import com.example.cs_agent_service.service.cache.ChatResponseCache;
+import com.example.cs_agent_service.service.cache.KbGenerationService;
+import com.example.cs_agent_service.service.cache.RedisCacheService;
+import com.example.cs_agent_service.service.cache.SemanticCache;
+import com.example.cs_agent_service.service.cache.SingleFlight;
+import com.example.cs_agent_service.service.prompt.ContextPacker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 智能客服问答主链路：缓存 -> 检索 -> 拒答闸门 -> Prompt 组装 -> LLM -> 回写缓存。
+ * 同一个缓存 key 的并发 miss 会被合并为一次计算。
+ */
+@Service
+public class ChatService {
+    private static final Logger log = LoggerFactory.getLogger(ChatService.class);
+
+    public static final String REFUSAL_ANSWER = "抱歉，小云暂时还没学会这个问题";
+
+    static final String SYSTEM_MSG = """
+            你是网易云音乐智能客服小云，请用亲切活泼的语气回答。
+            必须优先基于【已知信息】回答；
+            如果已知信息不足，就回答：'抱歉，小云暂时还没学会这个问题'。
+            不要编造事实。
+        """.trim();
+
+    private final KnowledgeBaseService knowledgeBaseService;
+    private final DashScopeClient dashScopeClient;
+    private final ChatResponseCache cache;
+    private final RedisCacheService redis;
+    private final SingleFlight singleFlight;
+    private final SemanticCache semanticCache;
+    private final KbGenerationService kbGeneration;
+    private final ContextPacker contextPacker;
+    private final CacheProperties cacheProps;
+    private final ChatBatchProperties batchProps;
+    private final LlmLimiterProperties limiterProps;
+    private final Counter remoteCoalesced;
+    private final Counter fallbacks;
+    private final Counter refusals;
+    private final Timer lookupHit;
+    private final Timer lookupSemanticHit;
+    private final Timer lookupMiss;
+    private final Counter batchCached;
+    private final Counter batchComputed;
+    private final Counter batchDeduplicated;
+
+    public ChatService(
+            KnowledgeBaseService knowledgeBaseService,
+            DashScopeClient dashScopeClient,
+            ChatResponseCache cache,
+            RedisCacheService redis,
+            SingleFlight singleFlight,
+            SemanticCache semanticCache,
+            KbGenerationService kbGeneration,
+            ContextPacker contextPacker,
+            CacheProperties cacheProps,
+            ChatBatchProperties batchProps,
+            LlmLimiterProperties limiterProps,
+            MeterRegistry registry
+    ) {
+        this.knowledgeBaseService = knowledgeBaseService;
+        this.dashScopeClient = dashScopeClient;
+        this.cache = cache;
+        this.redis = redis;
+        this.singleFlight = singleFlight;
+        this.semanticCache = semanticCache;
+        this.kbGeneration = kbGeneration;
+        this.contextPacker = contextPacker;
+        this.cacheProps = cacheProps;
+        this.batchProps = batchProps;
+        this.limiterProps = limiterProps;
+        this.remoteCoalesced = Counter.builder("agent.chat.singleflight.calls")
+                .description("Calls served by a computation running on another node")
+                .tag("role", "remote-waiter")
+                .register(registry);
+        this.refusals = Counter.builder("agent.chat.refusals")
+                .description("Questions answered by the refusal gate (no retrieval hits, no LLM call)")
+                .register(registry);
+        this.fallbacks = Counter.builder("agent.chat.fallbacks")
+                .description("Questions answered from the knowledge base because the LLM was overloaded")
+                .register(registry);
+        this.lookupHit = lookupTimer(registry, "hit");
+        this.lookupSemanticHit = lookupTimer(registry, "semantic_hit");
+        this.lookupMiss = lookupTimer(registry, "miss");
+        this.batchCached = batchCounter(registry, "cached");
+        this.batchComputed = batchCounter(registry, "computed");
+        this.batchDeduplicated = batchCounter(registry, "deduplicated");
+    }
+
+    private static Counter batchCounter(MeterRegistry registry, String result) {
+        return Counter.builder("agent.chat.batch.questions")
+                .description("Questions received by /chat/batch, by how they were resolved")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static Timer lookupTimer(MeterRegistry registry, String result) {
+        return Timer.builder("agent.chat.cache.lookup")
+                .description("Response cache lookup (L1 -> L2 -> semantic)")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * 缓存/检索在调用线程完成，LLM 调用在 OkHttp Dispatcher 上执行，
+     * 调用方（servlet）线程不必等待。同 key 的并发 miss 经 single-flight 合并。
+     *
+     * @param q 已 trim 的非空问题
+     */
+    public CompletableFuture<ChatResponse> chatAsync(String q) {
+        log.info("[chat] q='{}' cacheEnabled={} mode=async", q, cacheProps.isEnabled());
+        String cacheKey = buildCacheKey(q);
+
+        Optional<ChatResponse> cached = cachedAnswer("[chat]", q, cacheKey);
+        if (cached.isPresent()) return CompletableFuture.completedFuture(cached.get());
+        return missAsync(q, cacheKey);
+    }
+
+    /**
+     * 批量问答：相同问题只算一次；所有缓存 key 一次批量查询（L1 + 一次 MGET），
+     * 未命中的问题并发计算，同时在途的不超过 agent.chat-batch.concurrency。
+     * 结果与输入顺序一致；单个问题失败只影响它自己（返回 error 字段）。
+     *
+     * @param questions 已 trim 的非空问题
+     */
+    public CompletableFuture<List<ChatResponse>> chatBatch(List<String> questions) {
+        // cacheKey -> 问题，保留首次出现的顺序
+        Map<String, String> unique = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(questions.size());
+        for (String q : questions) {
+            String key = buildCacheKey(q);
+            keys.add(key);
+            unique.putIfAbsent(key, q);
+        }
+
+        Map<String, ChatResponse> cached = cacheProps.isEnabled() ? cache.getAll(unique.keySet()) : Map.of();
+        Map<String, CompletableFuture<ChatResponse>> results = new LinkedHashMap<>();
+        List<Supplier<CompletableFuture<?>>> misses = new ArrayList<>();
+        for (Map.Entry<String, String> e : unique.entrySet()) {
+            String key = e.getKey();
+            ChatResponse hit = cached.get(key);
+            if (hit != null) {
+                results.put(key, CompletableFuture.completedFuture(hit));
+                continue;
+            }
+            CompletableFuture<ChatResponse> slot = new CompletableFuture<>();
+            results.put(key, slot);
+            misses.add(() -> missAsync(e.getValue(), key).whenComplete((r, err) -> {
+                if (err != null) slot.completeExceptionally(err);
+                else slot.complete(r);
+            }));
+        }
+
+        batchCached.increment(cached.size());
+        batchComputed.increment(misses.size());
+        batchDeduplicated.increment(questions.size() - unique.size());
+        log.info("[chat-batch] size={} unique={} cached={} compute={} concurrency={}",
+                questions.size(), unique.size(), cached.size(), misses.size(), batchProps.getConcurrency());
+
+        return runBounded(misses, batchProps.getConcurrency()).thenApply(ignored -> {
+            List<ChatResponse> out = new ArrayList<>(keys.size());
+            for (String key : keys) out.add(batchResult(results.get(key)));
+            return out;
+        });
+    }
+
+    private static ChatResponse batchResult(CompletableFuture<ChatResponse> f) {
+        try {
+            return f.join();
+        } catch (Exception e) {
+            log.warn("[chat-batch] question failed: {}", e.getMessage());
+            return ChatResponse.failed("服务暂时不可用，请稍后重试");
+        }
+    }
+
+    /**
+     * 固定数量的“通道”依次领取任务：一个任务结束（成功或失败）才开始下一个，
+     * 因此耗时取决于 任务数 / limit，而不是一次把所有请求压给 LLM。
+     */
+    private static CompletableFuture<Void> runBounded(List<Supplier<CompletableFuture<?>>> tasks, int limit) {
+        AtomicInteger next = new AtomicInteger();
+        int lanes = Math.min(Math.max(1, limit), tasks.size());
+        CompletableFuture<?>[] running = new CompletableFuture<?>[lanes];
+        for (int i = 0; i < lanes; i++) running[i] = lane(tasks, next);
+        return CompletableFuture.allOf(running);
+    }
+
+    private static CompletableFuture<Void> lane(List<Supplier<CompletableFuture<?>>> tasks, AtomicInteger next) {
+        int i = next.getAndIncrement();
+        if (i >= tasks.size()) return CompletableFuture.completedFuture(null);
+        CompletableFuture<?> task;
+        try {
+            task = tasks.get(i).get();
+        } catch (RuntimeException e) {
+            task = CompletableFuture.failedFuture(e);
+        }
+        return task.handle((r, e) -> null).thenCompose(ignored -> lane(tasks, next));
+    }
+
+    /**
+     * 缓存未命中后的计算：同 key 经 single-flight 合并，可选跨节点锁。
+     */
+    private CompletableFuture<ChatResponse> missAsync(String q, String cacheKey) {
+        if (!cacheProps.isCoalesceEnabled()) {
+            return computeAsync(q, cacheKey);
+        }
+        return singleFlight.executeAsync(cacheKey, () -> {
+            Optional<ChatResponse> again = lookup(cacheKey);
+            if (again.isPresent()) return CompletableFuture.completedFuture(again.get());
+
+            if (cacheProps.isEnabled() && cacheProps.isDistributedLock()) {
+                return computeWithLockAsync(q, cacheKey);
+            }
+            return computeAsync(q, cacheKey);
+        });
+    }
+
+    /**
+     * 跨节点合并：拿到 Redis 锁的节点计算，其余节点轮询缓存等结果（delayedExecutor 定时，不占线程 sleep）；
+     * 等待超时或持锁方失败（锁消失但无缓存）时自己计算。
+     */
+    private CompletableFuture<ChatResponse> computeWithLockAsync(String q, String cacheKey) {
+        String lockKey = cacheKey + ":lock";
+        String token = UUID.randomUUID().toString();
+        if (redis.tryLock(lockKey, token, cacheProps.getLockTtlSeconds())) {
+            CompletableFuture<ChatResponse> f = computeAsync(q, cacheKey);
+            f.whenComplete((r, e) -> redis.unlock(lockKey, token));
+            return f;
+        }
+        return awaitPeer(q, cacheKey, lockKey, System.currentTimeMillis() + cacheProps.getLockWaitMs());
+    }
+
+    private CompletableFuture<ChatResponse> awaitPeer(String q, String cacheKey, String lockKey, long deadline) {
+        long poll = Math.max(10, cacheProps.getLockPollMs());
+        return CompletableFuture
+                .supplyAsync(() -> cache.get(cacheKey), CompletableFuture.delayedExecutor(poll, TimeUnit.MILLISECONDS))
+                .thenCompose(peer -> {
+                    if (peer.isPresent()) {
+                        remoteCoalesced.increment();
+                        log.info("[chat] coalesced=REMOTE key={}", cacheKey);
+                        return CompletableFuture.completedFuture(peer.get());
+                    }
+                    if (System.currentTimeMillis() >= deadline || !redis.exists(lockKey)) {
+                        log.info("[chat] coalesced=GIVE_UP key={}, compute locally", cacheKey);
+                        return computeAsync(q, cacheKey);
+                    }
+                    return awaitPeer(q, cacheKey, lockKey, deadline);
+                });
+    }
+
+    private CompletableFuture<ChatResponse> computeAsync(String q, String cacheKey) {
+        try {
+            List<KnowledgeBase> hits = knowledgeBaseService.searchTop5(q);
+            if (hits == null || hits.isEmpty()) {
+                return CompletableFuture.completedFuture(refusal(cacheKey));
+            }
+
+            log.info("[chat] retrieval hits={} llm=CALL_ASYNC", hits.size());
+            return dashScopeClient.callAsync(SYSTEM_MSG, contextPacker.build(q, hits))
+                    .handle((answer, err) -> err == null ? answered(q, cacheKey, answer, hits) : degraded(err, hits));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private ChatResponse refusal(String cacheKey) {
+        ChatResponse resp = ChatResponse.of(REFUSAL_ANSWER, 0);
+
+        // refusal cache: very short TTL (optional)
+        writeCacheSafely(cacheKey, resp, cacheProps.getRefusalTtlSeconds());
+        refusals.increment();
+        log.info("[chat] cache=REFUSAL key={}", cacheKey);
+        return resp;
+    }
+
+    /**
+     * LLM 过载时的降级答复：直接返回检索到的第一条答案，不写缓存；
+     * 未开启降级或不是过载错误则原样抛出（过载映射为 429）。
+     */
+    private ChatResponse degraded(Throwable err, List<KnowledgeBase> hits) {
+        Optional<String> fallback = fallbackAnswer(err, hits);
+        if (fallback.isEmpty()) {
+            if (err instanceof RuntimeException re) throw re;
+            throw new CompletionException(err);
+        }
+        return degradedResponse(fallback.get(), hits);
+    }
+
+    private static ChatResponse degradedResponse(String answer, List<KnowledgeBase> hits) {
+        return ChatResponse.degraded(answer, hits.size());
+    }
+
+    Optional<String> fallbackAnswer(Throwable err, List<KnowledgeBase> hits) {
+        if (!limiterProps.isKbFallback() || !LlmOverloadedException.isCause(err)) return Optional.empty();
+        String answer = hits.get(0).getAnswer();
+        if (answer == null || answer.isBlank()) return Optional.empty();
+        fallbacks.increment();
+        log.info("[chat] llm=OVERLOADED fallback=KB id={}", hits.get(0).getId());
+        return Optional.of(answer);
+    }
+
+    private ChatResponse answered(String q, String cacheKey, String answer, List<KnowledgeBase> hits) {
+        ChatResponse resp = ChatResponse.of(answer, hits.size());
+
+        if (!cacheProps.isEnabled()) return resp;
+        // 条目修改/停用时据此精确失效；先于写缓存登记，否则中间的失效会漏掉这条答案
+        kbGeneration.recordDependencies(cacheKey, hits.stream().map(KnowledgeBase::getId).toList(),
+                cacheProps.getTtlSeconds());
+        writeCacheSafely(cacheKey, resp, cacheProps.getTtlSeconds());
+        // 只登记正常答案；拒答不跨问题复用
+        semanticCache.remember(q, cacheKey, cacheProps.getTtlSeconds());
+        kbGeneration.verifyAnswer(cacheKey, hits);
+        return resp;
+    }
+
+    /**
+     * 流式问答：缓存命中/拒答时一次性推送完整答案；否则转发 LLM 增量，
+     * 结束后把拼好的完整答案回写缓存。流式请求不参与 single-flight。
+     */
+    public void chatStream(String q, StreamListener listener) {
+        try {
+            log.info("[chat-stream] q='{}' cacheEnabled={}", q, cacheProps.isEnabled());
+            String cacheKey = buildCacheKey(q);
+
+            Optional<ChatResponse> cached = cachedAnswer("[chat-stream]", q, cacheKey);
+            if (cached.isPresent()) {
+                listener.onDelta(cached.get().answer());
+                listener.onDone(cached.get());
+                return;
+            }
+
+            List<KnowledgeBase> hits = knowledgeBaseService.searchTop5(q);
+            if (hits == null || hits.isEmpty()) {
+                ChatResponse resp = refusal(cacheKey);
+                listener.onDelta(REFUSAL_ANSWER);
+                listener.onDone(resp);
+                return;
+            }
+
+            log.info("[chat-stream] retrieval hits={} llm=STREAM", hits.size());
+            dashScopeClient.stream(SYSTEM_MSG, contextPacker.build(q, hits), new DashScopeClient.StreamCallback() {
+                @Override
+                public void onDelta(String text) {
+                    listener.onDelta(text);
+                }
+
+                @Override
+                public void onComplete(String fullText) {
+                    listener.onDone(answered(q, cacheKey, fullText, hits));
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    Optional<String> fallback = fallbackAnswer(error, hits);
+                    if (fallback.isEmpty()) {
+                        listener.onError(error);
+                        return;
+                    }
+                    listener.onDelta(fallback.get());
+                    listener.onDone(degradedResponse(fallback.get(), hits));
+                }
+            });
+        } catch (Exception e) {
+            listener.onError(e);
+        }
+    }
+
+    private Optional<ChatResponse> cachedAnswer(String tag, String q, String cacheKey) {
+        if (!cacheProps.isEnabled()) return Optional.empty();
+
+        long start = System.nanoTime();
+        Optional<ChatResponse> exact = cache.get(cacheKey);
+        if (exact.isPresent()) {
+            lookupHit.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.info("{} cache=HIT key={}", tag, cacheKey);
+            return exact;
+        }
+
+        if (semanticCache.isEnabled()) {
+            Optional<String> similarKey = semanticCache.nearestKey(q);
+            if (similarKey.isPresent()) {
+                Optional<ChatResponse> similar = cache.get(similarKey.get());
+                if (similar.isPresent()) {
+                    lookupSemanticHit.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    log.info("{} cache=SEMANTIC_HIT key={} via={}", tag, cacheKey, similarKey.get());
+                    return similar;
+                }
+                semanticCache.forget(similarKey.get());
+            }
+        }
+
+        lookupMiss.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("{} cache=MISS key={}", tag, cacheKey);
+        return Optional.empty();
+    }
+
+    private Optional<ChatResponse> lookup(String cacheKey) {
+        if (!cacheProps.isEnabled()) return Optional.empty();
+        return cache.get(cacheKey);
+    }
+
+    /**
+     * Cache key: versioned prefix + kb generation + sha256(question.trim()) to avoid special chars / huge keys.
+     * 知识库代际变化后旧 key 自然不可达。
+     */
+    private String buildCacheKey(String question) {
+        String normalized = question.trim();
+        return cacheProps.getKeyPrefix() + ":g" + kbGeneration.current() + ":" + sha256Hex(normalized);
+    }
+
+    static String sha256Hex(String s) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (Exception e) {
+            // extreme fallback: still works, just less safe for redis key
+            return s;
+        }
+    }
+
+    /**
+     * Never break main flow: cache errors must be ignored.
+     */
+    private void writeCacheSafely(String key, ChatResponse resp, long ttlSeconds) {
+        if (!cacheProps.isEnabled()) return;
+        if (ttlSeconds <= 0) return;
+
+        log.info("[chat] cache=WRITE key={} ttl={}s", key, ttlSeconds);
+        cache.put(key, resp, ttlSeconds);
+    }
+
+    public interface StreamListener {
+        void onDelta(String text);
+
+        /**
+         * @param resp 与 /chat 相同结构的完整响应
+         */
+        void onDone(ChatResponse resp);
+
+        void onError(Throwable error);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.cs_agent_service.service;
+
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.entity.Message;
+import com.example.cs_agent_service.service.ai.DashScopeClient;
+import com.example.cs_agent_service.service.ai.DashScopeClient.Turn;
+import com.example.cs_agent_service.service.context.ConversationContextStore;
+import com.example.cs_agent_service.service.prompt.ContextPacker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 会话内多轮问答：历史只取内存窗口（有界），本轮仍按“检索 -> 拒答闸门 -> LLM”处理，
+ * 用户问题和回答作为 Message 落库。答案依赖上下文，不走问答缓存。
+ */
+@Service
+public class ConversationChatService {
+    private static final Logger log = LoggerFactory.getLogger(ConversationChatService.class);
+
+    private final ConversationService conversations;
+    private final ConversationContextStore contextStore;
+    private final KnowledgeBaseService knowledgeBaseService;
+    private final DashScopeClient dashScopeClient;
+    private final ChatService chatService;
+    private final ContextPacker contextPacker;
+
+    public ConversationChatService(
+            ConversationService conversations,
+            ConversationContextStore contextStore,
+            KnowledgeBaseService knowledgeBaseService,
+            DashScopeClient dashScopeClient,
+            ChatService chatService,
+            ContextPacker contextPacker
+    ) {
+        this.conversations = conversations;
+        this.contextStore = contextStore;
+        this.knowledgeBaseService = knowledgeBaseService;
+        this.dashScopeClient = dashScopeClient;
+        this.chatService = chatService;
+        this.contextPacker = contextPacker;
+    }
+
+    /**
+     * @param q 已 trim 的非空问题
+     */
+    public CompletableFuture<Map<String, Object>> chat(Long conversationId, String q) {
+        try {
+            conversations.requireOpen(conversationId);
+            List<Turn> history = contextStore.recent(conversationId);
+            List<KnowledgeBase> hits = retrieve(q, history);
+            log.info("[chat-conv] conversation={} history={} hits={}", conversationId, history.size(), hits.size());
+
+            if (hits.isEmpty()) {
+                return CompletableFuture.completedFuture(reply(conversationId, q, ChatService.REFUSAL_ANSWER, 0));
+            }
+            return dashScopeClient.callAsync(ChatService.SYSTEM_MSG, history, contextPacker.build(q, hits))
+                    .handle((answer, err) -> {
+                        if (err == null) return reply(conversationId, q, answer, hits.size());
+                        // LLM 过载：按配置用知识库答案回复，否则抛出（429）
+                        String fallback = chatService.fallbackAnswer(err, hits).orElseThrow(() ->
+                                err instanceof CompletionException ce ? ce : new CompletionException(err));
+                        return reply(conversationId, q, fallback, hits.size());
+                    });
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 追问（如“那学生呢？”）本身可能检索不到，带上上一条用户问题再检索一次。
+     */
+    private List<KnowledgeBase> retrieve(String q, List<Turn> history) {
+        List<KnowledgeBase> hits = knowledgeBaseService.searchTop5(q);
+        if (!hits.isEmpty()) return hits;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            Turn t = history.get(i);
+            if ("user".equals(t.role())) {
+                return knowledgeBaseService.searchTop5(t.content() + " " + q);
+            }
+        }
+        return hits;
+    }
+
+    private Map<String, Object> reply(Long conversationId, String q, String answer, int hits) {
+        List<Message> saved = conversations.appendTurn(conversationId, q, answer);
+        contextStore.append(conversationId, saved);
+
+        Map<String, Object> resp = new LinkedHashMap<>();
+        resp.put("answer", answer);
+        resp.put("hits", hits);
+        resp.put("messageId", saved.get(saved.size() - 1).getId());
+        return resp;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.cs_agent_service.service;
+
+/**
+ * 会话已关闭。由 {@link ConversationService#close(Long)} 在事务内发布，监听方用
+ * {@code @TransactionalEventListener} 在提交后处理：回滚的关闭不会让各节点缓存成 CLOSED。
+ */
+public record ConversationClosed(Long conversationId) {}
@@ -5,6 +5,7 @@ import com.example.cs_agent_service.dto.CreateConversationRequest;
 import com.example.cs_agent_service.entity.Conversation;
 import com.example.cs_agent_service.entity.ConversationStatus;
 import com.example.cs_agent_service.repo.ConversationRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,31 +15,67 @@ import com.example.cs_agent_service.dto.AddMessageRequest;
 import com.example.cs_agent_service.dto.MessageResponse;
 import com.example.cs_agent_service.entity.Message;
 import com.example.cs_agent_service.repo.MessageRepository;
+import com.example.cs_agent_service.dto.BulkAppendResponse;
+import com.example.cs_agent_service.dto.MessageAck;
+import com.example.cs_agent_service.config.MessageBufferProperties;
+import com.example.cs_agent_service.entity.MessageSender;
+import com.example.cs_agent_service.service.archive.MessageArchiveStore;
+import com.example.cs_agent_service.service.cache.ConversationStatusCache;
+import com.example.cs_agent_service.service.ingest.MessageBatchWriter;
+import com.example.cs_agent_service.service.ingest.MessageWriteBuffer;
+import com.example.cs_agent_service.service.ingest.PendingMessage;
+import org.springframework.data.domain.Limit;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
 
 
 @Service
 public class ConversationService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_CONTENT = 2000;
+
     private final ConversationRepository repo;
     private final MessageRepository messageRepo;
-
-    public ConversationService(ConversationRepository repo, MessageRepository messageRepo) {
+    private final MessageBatchWriter batchWriter;
+    private final MessageWriteBuffer writeBuffer;
+    private final MessageBufferProperties bufferProps;
+    private final ConversationStatusCache statusCache;
+    private final MessageArchiveStore archive;
+    private final ApplicationEventPublisher events;
+
+    public ConversationService(
+            ConversationRepository repo,
+            MessageRepository messageRepo,
+            MessageBatchWriter batchWriter,
+            MessageWriteBuffer writeBuffer,
+            MessageBufferProperties bufferProps,
+            ConversationStatusCache statusCache,
+            MessageArchiveStore archive,
+            ApplicationEventPublisher events
+    ) {
         this.repo = repo;
         this.messageRepo = messageRepo;
+        this.batchWriter = batchWriter;
+        this.writeBuffer = writeBuffer;
+        this.bufferProps = bufferProps;
+        this.statusCache = statusCache;
+        this.archive = archive;
+        this.events = events;
     }
 
+    /**
+     * 状态校验走 {@link ConversationStatusCache}，会话用引用代理关联：热路径上只有一条 INSERT。
+     */
     @Transactional
     public MessageResponse addMessage(Long conversationId, AddMessageRequest req) {
-        Conversation c = repo.findById(conversationId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
-
-        if (c.getStatus() == ConversationStatus.CLOSED) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "Conversation is CLOSED; cannot add messages");
-        }
+        requireOpen(conversationId);
 
         Message m = new Message();
-        m.setConversation(c);
+        m.setConversation(repo.getReferenceById(conversationId));
         m.setSender(req.sender());
         m.setContent(req.content());
 
@@ -46,15 +83,89 @@ public class ConversationService {
         return toMessageResponse(saved);
     }
 
+    /**
+     * 批量追加：一次状态校验 + 多行 INSERT，返回时已落库。
+     */
+    @Transactional
+    public BulkAppendResponse appendMessages(Long conversationId, List<AddMessageRequest> reqs) {
+        requireOpen(conversationId);
+        Instant now = Instant.now();
+        List<PendingMessage> rows = reqs.stream()
+                .map(r -> new PendingMessage(conversationId, r.sender(), r.content(), now))
+                .toList();
+        return new BulkAppendResponse(batchWriter.insert(rows, bufferProps.getMaxBatch()));
+    }
+
+    /**
+     * 缓冲写入：校验会话后只入内存队列，返回时尚未落库（见 {@link MessageAck}）。
+     * 消息 id 在落库时才分配，同一会话不要与同步写入（单条、批量、问答）混用，否则按 id 的顺序会乱。
+     *
+     * @return 队列已满时返回 empty，由调用方拒绝请求
+     */
     @Transactional(readOnly = true)
-    public List<MessageResponse> listMessages(Long conversationId) {
-        if (!repo.existsById(conversationId)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found");
+    public Optional<MessageAck> bufferMessage(Long conversationId, AddMessageRequest req) {
+        requireOpen(conversationId);
+        OptionalLong seq = writeBuffer.offer(
+                new PendingMessage(conversationId, req.sender(), req.content(), Instant.now()));
+        return seq.isPresent() ? Optional.of(new MessageAck("ACCEPTED", writeBuffer.node(), seq.getAsLong())) : Optional.empty();
+    }
+
+    /**
+     * 多轮问答的一轮：用户问题与客服回答在同一事务内写入，返回保存后的两条消息（带 id）。
+     * LLM 调用期间会话可能已被关闭，写入前再校验一次，关闭的会话不再接受任何写入。
+     */
+    @Transactional
+    public List<Message> appendTurn(Long conversationId, String question, String answer) {
+        requireOpen(conversationId);
+        Conversation ref = repo.getReferenceById(conversationId);
+        Message user = new Message();
+        user.setConversation(ref);
+        user.setSender(MessageSender.USER);
+        user.setContent(question);
+        Message agent = new Message();
+        agent.setConversation(ref);
+        agent.setSender(MessageSender.AGENT);
+        // content 列上限 2000，超长回答截断保存
+        agent.setContent(answer.length() > MAX_CONTENT ? answer.substring(0, MAX_CONTENT) : answer);
+        return messageRepo.saveAll(List.of(user, agent));
+    }
+
+    public void requireOpen(Long conversationId) {
+        ConversationStatus status = statusCache.get(conversationId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
+        if (status == ConversationStatus.CLOSED) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Conversation is CLOSED; cannot add messages");
         }
-        return messageRepo.findByConversationIdOrderByCreatedAtAsc(conversationId)
-                .stream()
-                .map(this::toMessageResponse)
-                .toList();
+    }
+
+    /**
+     * 按 id 升序返回 afterId 之后的至多 limit 条消息。
+     * 翻页时把上一页最后一条的 id 作为下一次的 afterId；轮询新消息时传客户端已见到的最大 id（增量同步）。
+     *
+     * @param afterId 游标，null 表示从头开始
+     * @param limit   null 取默认值，超过上限按上限处理
+     */
+    @Transactional(readOnly = true)
+    public List<MessageResponse> listMessages(Long conversationId, Long afterId, Integer limit) {
+        int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (size <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        long cursor = afterId == null ? 0L : afterId;
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        List<Message> page = messageRepo.findByConversationIdAndIdGreaterThanOrderByIdAsc(
+                conversationId, cursor, Limit.of(pageSize));
+        if (!page.isEmpty()) {
+            return page.stream()
+                    .map(this::toMessageResponse)
+                    .toList();
+        }
+
+        // 空页才需要区分“没有新消息”“会话不存在”和“已归档”，轮询的常见路径只有一次索引查询。
+        // 状态走缓存：OPEN 的会话不会被归档，只有 CLOSED 才去查冷存储（会话的消息只在其中一层）
+        ConversationStatus status = statusCache.get(conversationId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
+        return status == ConversationStatus.CLOSED ? archive.read(conversationId, cursor, pageSize) : List.of();
     }
 
     private MessageResponse toMessageResponse(Message m) {
@@ -72,6 +183,7 @@ public class ConversationService {
         c.setCustomerId(req.customerId());
         c.setStatus(ConversationStatus.OPEN);
         Conversation saved = repo.save(c);
+        statusCache.opened(saved.getId());
         return toResponse(saved);
     }
 
@@ -88,6 +200,8 @@ public class ConversationService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Conversation not found"));
         c.setStatus(ConversationStatus.CLOSED);
         Conversation saved = repo.save(c);
+        // 状态缓存、跨节点广播和上下文窗口都在提交后处理（ConversationClosed 的监听方）
+        events.publishEvent(new ConversationClosed(id));
         return toResponse(saved);
     }
 
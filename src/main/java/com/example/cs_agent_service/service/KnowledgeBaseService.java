@@ -1,10 +1,20 @@
 package com.example.cs_agent_service.service;
 
+import com.example.cs_agent_service.config.RetrievalProperties;
 import com.example.cs_agent_service.dto.CreateKnowledgeBaseRequest;
 import com.example.cs_agent_service.dto.KnowledgeBaseResponse;
 import com.example.cs_agent_service.dto.UpdateKnowledgeBaseRequest;
 import com.example.cs_agent_service.entity.KnowledgeBase;
 import com.example.cs_agent_service.repo.KnowledgeBaseRepository;
+import com.example.cs_agent_service.service.change.KnowledgeChange;
+import com.example.cs_agent_service.service.retrieval.KnowledgeIndex;
+import com.example.cs_agent_service.service.retrieval.RankFusion;
+import com.example.cs_agent_service.service.retrieval.VectorIndex;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -12,18 +22,102 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageRequest;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class KnowledgeBaseService {
 
     private final KnowledgeBaseRepository repository;
+    private final KnowledgeIndex index;
+    private final VectorIndex vectorIndex;
+    private final RetrievalProperties retrievalProps;
+    private final ApplicationEventPublisher events;
+    private final Timer indexLatency;
+    private final Timer likeLatency;
+    private final Timer vectorLatency;
+    private final DistributionSummary retrievalHits;
 
-    public KnowledgeBaseService(KnowledgeBaseRepository repository) {
+    public KnowledgeBaseService(
+            KnowledgeBaseRepository repository,
+            KnowledgeIndex index,
+            VectorIndex vectorIndex,
+            RetrievalProperties retrievalProps,
+            ApplicationEventPublisher events,
+            MeterRegistry registry
+    ) {
         this.repository = repository;
+        this.index = index;
+        this.vectorIndex = vectorIndex;
+        this.retrievalProps = retrievalProps;
+        this.events = events;
+        this.indexLatency = retrievalTimer(registry, "index");
+        this.likeLatency = retrievalTimer(registry, "like");
+        this.vectorLatency = retrievalTimer(registry, "vector");
+        this.retrievalHits = DistributionSummary.builder("agent.retrieval.hits")
+                .description("Knowledge base entries returned per question")
+                .register(registry);
+    }
+
+    private static Timer retrievalTimer(MeterRegistry registry, String path) {
+        return Timer.builder("agent.retrieval.latency")
+                .description("Knowledge base retrieval, including loading the hit rows")
+                .tag("path", path)
+                .register(registry);
     }
 
     public List<KnowledgeBase> searchTop5(String question) {
+        // 向量索引未就绪（启动中）时只走词法检索
+        boolean vector = vectorIndex.isReady();
+        List<KnowledgeBase> hits = vector && !retrievalProps.isLexicalEnabled() ? List.of() : searchLexical(question);
+        if (vector) hits = withVectorHits(question, hits);
+        retrievalHits.record(hits.size());
+        return hits;
+    }
+
+    private List<KnowledgeBase> searchLexical(String question) {
+        long start = System.nanoTime();
+        boolean viaIndex = false;
+        List<KnowledgeBase> hits;
+        if (index.isReady()) {
+            String q2 = normalizeQuestion(question);
+            String q = q2.length() >= 2 ? q2 : (question == null ? "" : question.trim());
+            // 单字问题没有 n-gram，继续走 LIKE
+            viaIndex = q.length() >= 2;
+            hits = viaIndex ? loadInOrder(index.search(q, 5)) : searchLike(question);
+        } else {
+            hits = searchLike(question);
+        }
+        (viaIndex ? indexLatency : likeLatency).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return hits;
+    }
+
+    /**
+     * 向量召回与词法结果做 RRF 融合（vector 模式下词法结果为空，即纯向量检索）。
+     * 词法结果已加载的实体直接复用，只补查新增的 id。
+     */
+    private List<KnowledgeBase> withVectorHits(String question, List<KnowledgeBase> lexical) {
+        long start = System.nanoTime();
+        List<Long> lexicalIds = lexical.stream().map(KnowledgeBase::getId).toList();
+        List<Long> fused = RankFusion.reciprocalRank(List.of(lexicalIds, vectorIndex.search(question, 5)), 5);
+        List<KnowledgeBase> hits = lexical;
+        if (!fused.equals(lexicalIds)) {
+            Map<Long, KnowledgeBase> byId = new HashMap<>();
+            for (KnowledgeBase kb : lexical) byId.put(kb.getId(), kb);
+            List<Long> missing = fused.stream().filter(id -> !byId.containsKey(id)).toList();
+            for (KnowledgeBase kb : repository.findAllById(missing)) {
+                if (Boolean.TRUE.equals(kb.getActive())) byId.put(kb.getId(), kb);
+            }
+            hits = fused.stream().map(byId::get).filter(Objects::nonNull).toList();
+        }
+        vectorLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return hits;
+    }
+
+    private List<KnowledgeBase> searchLike(String question) {
         Pageable top5 = PageRequest.of(0, 5);
 
         List<KnowledgeBase> hits = repository.searchActiveTop(question, top5);
@@ -37,7 +131,22 @@ public class KnowledgeBaseService {
         return hits;
     }
 
-    private String normalizeQuestion(String q) {
+    /**
+     * 按索引给出的相关度顺序取回实体（主键查询）。
+     */
+    private List<KnowledgeBase> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) return List.of();
+        Map<Long, KnowledgeBase> byId = new HashMap<>();
+        for (KnowledgeBase kb : repository.findAllById(ids)) {
+            if (Boolean.TRUE.equals(kb.getActive())) byId.put(kb.getId(), kb);
+        }
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * 去掉标点、客套/疑问词和价格类后缀，得到问题主干（检索与语义缓存共用）。
+     */
+    public static String normalizeQuestion(String q) {
         if (q == null) return "";
         String s = q.trim();
         s = s.replaceAll("[\\s\\p{Punct}，。！？、；：“”‘’（）()【】\\[\\]{}<>《》]+", "");
@@ -56,6 +165,7 @@ public class KnowledgeBaseService {
         kb.setActive(true);
         
         KnowledgeBase saved = repository.save(kb);
+        events.publishEvent(KnowledgeChange.created(saved));
         return toResponse(saved);
     }
 
@@ -75,6 +185,11 @@ public class KnowledgeBaseService {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Knowledge base not found or inactive");
         }
         
+        // question/keywords 变化会改变检索结果，需要全局失效；只改 answer 时只失效用到它的答案
+        boolean questionChanged = request.question() != null && !request.question().equals(kb.getQuestion());
+        boolean retrievalChanged =
+                questionChanged || (request.keywords() != null && !request.keywords().equals(kb.getKeywords()));
+
         if (request.question() != null) {
             kb.setQuestion(request.question());
         }
@@ -85,7 +200,8 @@ public class KnowledgeBaseService {
             kb.setKeywords(request.keywords());
         }
         
-        KnowledgeBase saved = repository.save(kb);
+        KnowledgeBase saved = saveAndFlush(kb);
+        events.publishEvent(KnowledgeChange.updated(saved, retrievalChanged, questionChanged));
         return toResponse(saved);
     }
 
@@ -112,7 +228,19 @@ public class KnowledgeBaseService {
         }
         
         kb.setActive(false);
-        repository.save(kb);
+        events.publishEvent(KnowledgeChange.deactivated(saveAndFlush(kb)));
+    }
+
+    /**
+     * 立即 flush，事件里带上递增后的版本号；并发修改同一条目时后提交的返回 409。
+     * 派生状态（索引、缓存）由 {@link KnowledgeChange} 的监听者在事务提交后更新，回滚时不受影响。
+     */
+    private KnowledgeBase saveAndFlush(KnowledgeBase kb) {
+        try {
+            return repository.saveAndFlush(kb);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Knowledge base was modified concurrently, please retry");
+        }
     }
 
     private KnowledgeBaseResponse toResponse(KnowledgeBase kb) {
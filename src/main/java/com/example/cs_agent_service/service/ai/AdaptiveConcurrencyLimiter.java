@@ -0,0 +1,216 @@
+package com.example.cs_agent_service.service.ai;
+
+import com.example.cs_agent_service.config.LlmLimiterProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * LLM 调用的自适应并发上限（AIMD，由延迟驱动）：
+ * <ul>
+ *   <li>延迟不超过基线 × latency-tolerance 且并发接近上限 -> 上限 +1/limit（约每轮 +1）；</li>
+ *   <li>延迟超标、超时/IO 错误、429/5xx -> 上限 × backoff-ratio，每个基线 RTT 最多降一次。</li>
+ * </ul>
+ * 基线为延迟的 EWMA，超标样本只以 1/10 权重计入：上游短时变慢会压低上限，
+ * 持续变慢则基线逐渐上移，上限重新恢复。
+ * 超出上限的请求在有界队列里等待 max-wait-ms，队列满或超时抛出 {@link LlmOverloadedException}，
+ * 请求线程不会堆积在上游调用上。
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BASELINE_ALPHA = 0.05;
+
+    private final LlmLimiterProperties props;
+    private final LongSupplier clock;
+
+    // 以下状态都在 this 上同步
+    private final ArrayDeque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+    private double baselineNanos = 0;
+    private long lastDecreaseNanos;
+
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(LlmLimiterProperties props, MeterRegistry registry) {
+        this(props, registry, System::nanoTime);
+    }
+
+    // 测试用：可注入时钟
+    AdaptiveConcurrencyLimiter(LlmLimiterProperties props, MeterRegistry registry, LongSupplier clock) {
+        this.props = props;
+        this.clock = clock;
+        this.limit = clamp(props.getInitialLimit());
+        this.lastDecreaseNanos = clock.getAsLong();
+        this.rejectedQueueFull = rejectedCounter(registry, "queue_full");
+        this.rejectedTimeout = rejectedCounter(registry, "timeout");
+        registry.gauge("agent.llm.limiter.limit", this, AdaptiveConcurrencyLimiter::limit);
+        registry.gauge("agent.llm.limiter.inflight", this, AdaptiveConcurrencyLimiter::inFlight);
+        registry.gauge("agent.llm.limiter.queued", this, AdaptiveConcurrencyLimiter::queued);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("agent.llm.limiter.rejected")
+                .description("LLM calls rejected by the concurrency limiter before being sent")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * 异步获取许可：有空位立即完成，否则排队；失败时以 LlmOverloadedException 结束。
+     */
+    public CompletableFuture<Permit> acquire() {
+        CompletableFuture<Permit> waiter;
+        synchronized (this) {
+            if (!props.isEnabled() || inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(clock.getAsLong()));
+            }
+            if (waiters.size() >= props.getQueueSize()) {
+                rejectedQueueFull.increment();
+                return CompletableFuture.failedFuture(overloaded("LLM 并发已满"));
+            }
+            waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+        }
+        CompletableFuture.delayedExecutor(props.getMaxWaitMs(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (waiter.completeExceptionally(overloaded("LLM 排队超时"))) {
+                rejectedTimeout.increment();
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * 不排队：有空位（且没有人在排队）才给许可，用于对冲这类可有可无的请求。
+     */
+    public synchronized Optional<Permit> tryAcquire() {
+        if (props.isEnabled() && (inFlight >= (int) limit || !waiters.isEmpty())) return Optional.empty();
+        inFlight++;
+        return Optional.of(new Permit(clock.getAsLong()));
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int queued() {
+        return waiters.size();
+    }
+
+    private LlmOverloadedException overloaded(String reason) {
+        return new LlmOverloadedException(reason, props.getRetryAfterSeconds());
+    }
+
+    private void release(long rttNanos, Outcome outcome) {
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        synchronized (this) {
+            if (outcome != Outcome.IGNORED) adjust(rttNanos, outcome == Outcome.DROPPED);
+            inFlight--;
+            while (!waiters.isEmpty() && inFlight < (int) limit) {
+                CompletableFuture<Permit> next = waiters.poll();
+                if (next.isDone()) continue;
+                inFlight++;
+                granted.add(next);
+            }
+        }
+        // 在锁外唤醒：等待者的后续逻辑（发请求）会在当前线程上执行
+        for (CompletableFuture<Permit> next : granted) {
+            // 与排队超时竞争失败：名额还回去
+            if (!next.complete(new Permit(clock.getAsLong()))) release(0, Outcome.IGNORED);
+        }
+    }
+
+    private void adjust(long rttNanos, boolean dropped) {
+        long now = clock.getAsLong();
+        boolean congested = dropped
+                || (baselineNanos > 0 && rttNanos > baselineNanos * props.getLatencyTolerance());
+        if (congested) {
+            if (now - lastDecreaseNanos >= baselineNanos) {
+                limit = clamp(limit * props.getBackoffRatio());
+                lastDecreaseNanos = now;
+            }
+        } else if (inFlight * 2 >= limit) {
+            // 只有上限确实被用到时才增长，避免空闲时无限抬高
+            limit = clamp(limit + 1.0 / limit);
+        }
+        if (!dropped) {
+            double alpha = congested ? BASELINE_ALPHA / 10 : BASELINE_ALPHA;
+            baselineNanos = baselineNanos == 0 ? rttNanos : baselineNanos + alpha * (rttNanos - baselineNanos);
+        }
+    }
+
+    private double clamp(double v) {
+        return Math.max(props.getMinLimit(), Math.min(props.getMaxLimit(), v));
+    }
+
+    enum Outcome { SUCCESS, DROPPED, IGNORED }
+
+    /**
+     * 一次调用占用的并发名额，必须且只能释放一次。
+     */
+    public final class Permit {
+        private final long start;
+        private volatile long marked = -1;
+        private boolean released;
+
+        private Permit(long start) {
+            this.start = start;
+        }
+
+        /**
+         * 流式调用在首个 token 到达时调用：延迟样本取到这里为止，名额仍占用到流结束。
+         */
+        public void mark() {
+            if (marked < 0) marked = clock.getAsLong() - start;
+        }
+
+        /**
+         * 正常完成，延迟计入样本。
+         */
+        public void success() {
+            releaseOnce(marked >= 0 ? marked : clock.getAsLong() - start, Outcome.SUCCESS);
+        }
+
+        /**
+         * 超时、IO 错误、429/5xx：视为拥塞信号。
+         */
+        public void dropped() {
+            releaseOnce(clock.getAsLong() - start, Outcome.DROPPED);
+        }
+
+        /**
+         * 与上游负载无关的结束（取消、4xx）：只释放名额。
+         */
+        public void ignore() {
+            releaseOnce(0, Outcome.IGNORED);
+        }
+
+        private void releaseOnce(long rttNanos, Outcome outcome) {
+            synchronized (this) {
+                if (released) return;
+                released = true;
+            }
+            release(rttNanos, outcome);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.cs_agent_service.service.ai;
+
+import com.example.cs_agent_service.config.LlmResilienceProperties.Policy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于最近 N 次调用结果的熔断器：CLOSED -> (失败率超阈值) OPEN -> (open-ms 后) HALF_OPEN，
+ * 半开状态放行 half-open-calls 个试探请求，全部成功则关闭，任一失败重新打开。
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Policy policy;
+    private final LongSupplier clock;
+
+    // 以下状态都在 this 上同步；window 为环形缓冲，true 表示失败
+    private final boolean[] window;
+    private int size = 0;
+    private int next = 0;
+    private int failures = 0;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trials = 0;
+    private int trialSuccesses = 0;
+
+    CircuitBreaker(Policy policy, LongSupplier clock) {
+        this.policy = policy;
+        this.clock = clock;
+        this.window = new boolean[Math.max(1, policy.getBreakerWindow())];
+    }
+
+    /**
+     * @return false 表示熔断中，调用不应发出
+     */
+    synchronized boolean tryAcquire() {
+        if (!policy.isBreakerEnabled()) return true;
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < TimeUnit.MILLISECONDS.toNanos(policy.getBreakerOpenMs())) return false;
+            state = State.HALF_OPEN;
+            trials = 0;
+            trialSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trials >= policy.getBreakerHalfOpenCalls()) return false;
+            trials++;
+        }
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++trialSuccesses >= policy.getBreakerHalfOpenCalls()) close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (size >= policy.getBreakerMinCalls() && failures >= policy.getBreakerFailureRate() * size) open();
+        }
+    }
+
+    /**
+     * 结果与上游健康无关（取消、4xx）：半开时归还试探名额，否则不计入。
+     */
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trials > trialSuccesses) trials--;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    /**
+     * 距离允许试探还有多久（秒，至少 1）。
+     */
+    synchronized long retryAfterSeconds() {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(policy.getBreakerOpenMs()) - (clock.getAsLong() - openedAt);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining));
+    }
+
+    private void record(boolean failure) {
+        if (size == window.length) {
+            if (window[next]) failures--;
+        } else {
+            size++;
+        }
+        window[next] = failure;
+        if (failure) failures++;
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        size = 0;
+        next = 0;
+        failures = 0;
+    }
+}
@@ -1,55 +1,375 @@
 package com.example.cs_agent_service.service.ai;
 
+import com.example.cs_agent_service.service.ai.AdaptiveConcurrencyLimiter.Permit;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class DashScopeClient {
 
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String STATUS_IO_ERROR = "IO_ERROR";
+    private static final String STATUS_CANCELLED = "CANCELLED";
 
-    // OkHttpClient 必须单例复用
-    private static final OkHttpClient HTTP = new OkHttpClient.Builder()
-            .connectTimeout(10, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .callTimeout(45, TimeUnit.SECONDS)
-            .build();
+    // OkHttpClient 必须单例复用（本 bean 单例，异步调用共用同一个 Dispatcher）
+    private final OkHttpClient http;
+
+    // 流式：总时长不设上限，只限制两次 chunk 之间的间隔（readTimeout）
+    private final OkHttpClient streamHttp;
 
     private final ObjectMapper objectMapper;
     private final String baseUrl;
     private final String apiKey;
     private final String model;
     private final double temperature;
+    private final MeterRegistry registry;
+    private final Timer firstToken;
+    // 只约束对话补全（call / callAsync / stream），embedding 延迟特征不同，不计入
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final LlmResilience resilience;
 
     public DashScopeClient(
             ObjectMapper objectMapper,
+            MeterRegistry registry,
+            AdaptiveConcurrencyLimiter limiter,
+            LlmResilience resilience,
             @Value("${agent.llm.base-url}") String baseUrl,
             @Value("${agent.llm.api-key}") String apiKey,
             @Value("${agent.llm.model}") String model,
-            @Value("${agent.llm.temperature:0.3}") double temperature
+            @Value("${agent.llm.temperature:0.3}") double temperature,
+            @Value("${agent.llm.max-requests:128}") int maxRequests,
+            @Value("${agent.llm.max-requests-per-host:128}") int maxRequestsPerHost
     ) {
         this.objectMapper = objectMapper;
         this.baseUrl = normalizeBaseUrl(baseUrl);
         this.apiKey = apiKey;
         this.model = model;
         this.temperature = temperature;
+        this.registry = registry;
+        this.limiter = limiter;
+        this.resilience = resilience;
+        this.firstToken = Timer.builder("agent.llm.stream.first-token")
+                .description("Time from sending a streaming request to the first content delta")
+                .register(registry);
+
+        // 只约束异步/流式调用（enqueue）；OkHttp 默认每 host 仅 5 个并发
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        this.http = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .callTimeout(45, TimeUnit.SECONDS)
+                .build();
+        this.streamHttp = http.newBuilder()
+                .callTimeout(0, TimeUnit.SECONDS)
+                .build();
     }
 
-    public String call(String systemMsg, String userMsg) {
+    /**
+     * OpenAI 兼容 /embeddings：返回 data[0].embedding。按 embedding 模型单独熔断，不经过并发限流。
+     */
+    public float[] embed(String embeddingModel, String text, int dimensions) {
+        if (apiKey == null || apiKey.isBlank() || apiKey.contains("${")) {
+            throw new RuntimeException("DashScope apiKey 未配置：请设置环境变量 DASHSCOPE_API_KEY");
+        }
+
+        String requestJson;
+        try {
+            ObjectNode root = objectMapper.createObjectNode();
+            root.put("model", embeddingModel);
+            root.put("input", text);
+            root.put("dimensions", dimensions);
+            root.put("encoding_format", "float");
+            requestJson = objectMapper.writeValueAsString(root);
+        } catch (Exception e) {
+            throw new RuntimeException("DashScope 请求体序列化失败: " + e.getMessage(), e);
+        }
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/embeddings")
+                .post(RequestBody.create(requestJson.getBytes(StandardCharsets.UTF_8), JSON))
+                .header("Authorization", "Bearer " + apiKey)
+                .build();
+
+        ModelGuard guard = resilience.forModel(embeddingModel);
+        guard.acquire();
+        Attempt attempt = new Attempt(null, guard, true);
+        try (Response response = http.newCall(request).execute()) {
+            String body = response.body() == null ? "" : response.body().string();
+            record("embed", Integer.toString(response.code()), attempt.start);
+            attempt.settle(response.code());
+            if (response.code() != 200) {
+                throw new RuntimeException("DashScope embedding 请求失败: status=" + response.code() + ", body=" + snippet(body));
+            }
+            JsonNode vec = objectMapper.readTree(body).path("data").path(0).path("embedding");
+            if (!vec.isArray() || vec.isEmpty()) {
+                throw new RuntimeException("DashScope 响应缺少 data[0].embedding，raw=" + snippet(body));
+            }
+            float[] out = new float[vec.size()];
+            for (int i = 0; i < out.length; i++) out[i] = (float) vec.get(i).asDouble();
+            return out;
+        } catch (IOException e) {
+            record("embed", STATUS_IO_ERROR, attempt.start);
+            attempt.dropped();
+            throw new RuntimeException("DashScope 请求异常: " + e.getMessage(), e);
+        } finally {
+            attempt.ignored();
+        }
+    }
+
+    /**
+     * 非阻塞调用：请求在 OkHttp Dispatcher 线程上执行，调用方线程立即返回。
+     * 并发已满时先在限流队列中等待，被拒绝或熔断中则以 {@link LlmOverloadedException} 结束。
+     * 开启对冲时，超过对冲延迟仍未返回会再发一次，先成功的为准，另一个被取消。
+     * 取消返回的 future 会取消上游请求。
+     */
+    public CompletableFuture<String> callAsync(String systemMsg, String userMsg) {
+        return callAsync(systemMsg, List.of(), userMsg);
+    }
+
+    /**
+     * 多轮对话：history 按时间顺序放在 system 与本轮 user 消息之间。
+     */
+    public CompletableFuture<String> callAsync(String systemMsg, List<Turn> history, String userMsg) {
+        Request request;
+        try {
+            request = buildRequest(systemMsg, history, userMsg, false);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        ModelGuard guard = resilience.forModel(model);
+        CompletableFuture<String> primary = attempt(request, guard);
+        OptionalLong hedgeDelay = guard.hedgeDelayNanos();
+        return hedgeDelay.isPresent() ? hedge(request, guard, primary, hedgeDelay.getAsLong()) : primary;
+    }
+
+    private CompletableFuture<String> attempt(Request request, ModelGuard guard) {
+        try {
+            guard.acquire();
+        } catch (LlmOverloadedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        limiter.acquire().whenComplete((permit, err) -> {
+            if (err != null) {
+                guard.onIgnored();
+                future.completeExceptionally(err);
+            } else if (future.isDone()) {
+                // 排队期间已被取消
+                new Attempt(permit, guard, true).ignored();
+            } else {
+                enqueue(request, new Attempt(permit, guard, true), future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 对冲：delay 后首个请求仍未结束，且熔断器关闭、限流有空位（不排队）时再发一次。
+     * 先成功者完成结果并取消其余；全部失败时以最后一个错误结束。
+     */
+    private CompletableFuture<String> hedge(Request request, ModelGuard guard, CompletableFuture<String> primary,
+                                            long delayNanos) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>(List.of(primary));
+        // 尚未失败的尝试数
+        AtomicInteger pending = new AtomicInteger(1);
+        primary.whenComplete((r, e) -> onHedgeAttempt(result, pending, r, e, guard, false));
+
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            if (result.isDone()) return;
+            Optional<Permit> permit = guard.allowHedge() ? limiter.tryAcquire() : Optional.empty();
+            if (permit.isEmpty()) {
+                guard.hedgeSkipped();
+                return;
+            }
+            pending.incrementAndGet();
+            guard.hedgeFired();
+            CompletableFuture<String> backup = new CompletableFuture<>();
+            attempts.add(backup);
+            backup.whenComplete((r, e) -> onHedgeAttempt(result, pending, r, e, guard, true));
+            enqueue(request, new Attempt(permit.get(), guard, true), backup);
+            if (result.isDone()) backup.cancel(true);
+        });
+
+        // 结果确定（或调用方取消）后取消仍在进行的尝试
+        result.whenComplete((r, e) -> attempts.forEach(a -> a.cancel(true)));
+        return result;
+    }
+
+    private static void onHedgeAttempt(CompletableFuture<String> result, AtomicInteger pending,
+                                       String answer, Throwable error, ModelGuard guard, boolean backup) {
+        if (error == null) {
+            if (result.complete(answer) && backup) guard.hedgeWon();
+        } else if (pending.decrementAndGet() == 0) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private void enqueue(Request request, Attempt attempt, CompletableFuture<String> future) {
+        Call call = http.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                record("chat", failureStatus(c), attempt.start);
+                if (c.isCanceled()) attempt.ignored();
+                else attempt.dropped();
+                future.completeExceptionally(new RuntimeException("DashScope 请求异常: " + e.getMessage(), e));
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (response) {
+                    String body = response.body() == null ? "" : response.body().string();
+                    record("chat", Integer.toString(response.code()), attempt.start);
+                    attempt.settle(response.code());
+                    if (response.code() != 200) {
+                        throw new RuntimeException("DashScope 请求失败: status=" + response.code() + ", body=" + body);
+                    }
+                    future.complete(extractContent(body));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    attempt.ignored();
+                }
+            }
+        });
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) call.cancel();
+        });
+    }
+
+    /**
+     * 流式调用（OpenAI 兼容 stream=true）：在 OkHttp 调度线程上逐行读取 SSE，
+     * 每个增量回调 onDelta，结束时回调 onComplete(完整答案)。方法本身立即返回。
+     * 回调抛出异常（如客户端断开）会取消上游请求。限流拒绝或熔断时回调 onError(LlmOverloadedException)。
+     * 流式请求不对冲。
+     */
+    public void stream(String systemMsg, String userMsg, StreamCallback callback) {
+        Request request = buildRequest(systemMsg, userMsg, true);
+        ModelGuard guard = resilience.forModel(model);
+        try {
+            guard.acquire();
+        } catch (LlmOverloadedException e) {
+            callback.onError(e);
+            return;
+        }
+        limiter.acquire().whenComplete((permit, err) -> {
+            if (err != null) {
+                guard.onIgnored();
+                callback.onError(err);
+            } else {
+                enqueueStream(request, new Attempt(permit, guard, false), callback);
+            }
+        });
+    }
+
+    private void enqueueStream(Request request, Attempt attempt, StreamCallback callback) {
+        long start = attempt.start;
+        Call call = streamHttp.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                record("stream", failureStatus(c), start);
+                if (c.isCanceled()) attempt.ignored();
+                else attempt.dropped();
+                callback.onError(new RuntimeException("DashScope 请求异常: " + e.getMessage(), e));
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                boolean recorded = false;
+                try (response) {
+                    ResponseBody body = response.body();
+                    if (response.code() != 200) {
+                        record("stream", Integer.toString(response.code()), start);
+                        attempt.settle(response.code());
+                        recorded = true;
+                        String raw = body == null ? "" : body.string();
+                        throw new RuntimeException("DashScope 请求失败: status=" + response.code() + ", body=" + raw);
+                    }
+                    if (body == null) throw new RuntimeException("DashScope 流式响应为空");
+                    String full = readStream(body.source(), callback, attempt.permit, start);
+                    // 流式耗时按整段响应读完计
+                    record("stream", "200", start);
+                    attempt.success();
+                    recorded = true;
+                    callback.onComplete(full);
+                } catch (Exception e) {
+                    if (!recorded) {
+                        record("stream", failureStatus(c), start);
+                        // 客户端断开（回调抛异常）不是上游故障
+                        if (e instanceof IOException && !c.isCanceled()) attempt.dropped();
+                    }
+                    c.cancel();
+                    callback.onError(e);
+                } finally {
+                    attempt.ignored();
+                }
+            }
+        });
+    }
+
+    private String readStream(BufferedSource source, StreamCallback callback, Permit permit, long start)
+            throws IOException {
+        StringBuilder full = new StringBuilder();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data:")) continue;
+            String data = line.substring(5).trim();
+            if (data.isEmpty()) continue;
+            if ("[DONE]".equals(data)) break;
+
+            String delta = extractDelta(data);
+            if (delta == null || delta.isEmpty()) continue;
+            if (full.isEmpty()) {
+                firstToken.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                permit.mark();
+            }
+            full.append(delta);
+            callback.onDelta(delta);
+        }
+        return full.toString();
+    }
+
+    private Request buildRequest(String systemMsg, String userMsg, boolean stream) {
+        return buildRequest(systemMsg, List.of(), userMsg, stream);
+    }
+
+    private Request buildRequest(String systemMsg, List<Turn> history, String userMsg, boolean stream) {
         if (apiKey == null || apiKey.isBlank() || apiKey.contains("${")) {
             throw new RuntimeException("DashScope apiKey 未配置：请设置环境变量 DASHSCOPE_API_KEY");
         }
@@ -64,11 +384,17 @@ public class DashScopeClient {
             ObjectNode root = objectMapper.createObjectNode();
             root.put("model", model);
             root.put("temperature", temperature);
+            if (stream) root.put("stream", true);
 
             ArrayNode messages = root.putArray("messages");
             messages.addObject()
                     .put("role", "system")
                     .put("content", systemMsg);
+            for (Turn t : history) {
+                messages.addObject()
+                        .put("role", t.role())
+                        .put("content", t.content());
+            }
             messages.addObject()
                     .put("role", "user")
                     .put("content", userMsg);
@@ -78,23 +404,25 @@ public class DashScopeClient {
             throw new RuntimeException("DashScope 请求体序列化失败: " + e.getMessage(), e);
         }
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(url)
                 .post(RequestBody.create(requestJson.getBytes(StandardCharsets.UTF_8), JSON))
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
                 .build();
+    }
 
-        try (Response response = HTTP.newCall(request).execute()) {
-            String body = response.body() == null ? "" : response.body().string();
-
-            if (response.code() != 200) {
-                throw new RuntimeException("DashScope 请求失败: status=" + response.code() + ", body=" + body);
-            }
-
-            return extractContent(body);
-        } catch (IOException e) {
-            throw new RuntimeException("DashScope 请求异常: " + e.getMessage(), e);
+    /**
+     * 流式 chunk：choices[0].delta.content，可能缺失（如首个 role chunk、结尾 usage chunk）。
+     */
+    private String extractDelta(String chunkJson) {
+        try {
+            JsonNode choices = objectMapper.readTree(chunkJson).get("choices");
+            if (choices == null || !choices.isArray() || choices.isEmpty()) return null;
+            JsonNode content = choices.get(0).path("delta").get("content");
+            return content == null || !content.isTextual() ? null : content.asText();
+        } catch (Exception e) {
+            throw new RuntimeException("DashScope 流式响应解析失败，raw=" + snippet(chunkJson) + ", err=" + e.getMessage(), e);
         }
     }
 
@@ -124,6 +452,22 @@ public class DashScopeClient {
         }
     }
 
+    /**
+     * agent.llm.requests{op, status}：status 为 HTTP 状态码，或 IO_ERROR / CANCELLED。
+     */
+    private void record(String op, String status, long startNanos) {
+        Timer.builder("agent.llm.requests")
+                .description("DashScope calls by operation and response status")
+                .tag("op", op)
+                .tag("status", status)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String failureStatus(Call call) {
+        return call.isCanceled() ? STATUS_CANCELLED : STATUS_IO_ERROR;
+    }
+
     private String normalizeBaseUrl(String s) {
         if (s == null) return null;
         String t = s.trim();
@@ -138,5 +482,73 @@ public class DashScopeClient {
         int max = 800;
         return s.length() <= max ? s : s.substring(0, max) + "...(truncated)";
     }
-}
 
+    /**
+     * 一条历史消息，role 为 user / assistant。
+     */
+    public record Turn(String role, String content) {
+        public static Turn user(String content) {
+            return new Turn("user", content);
+        }
+
+        public static Turn assistant(String content) {
+            return new Turn("assistant", content);
+        }
+    }
+
+    /**
+     * 一次上游请求的结果，同时报告给限流器与熔断器，只记录第一次。
+     * 非流式请求成功时顺带记录延迟（对冲延迟的样本），所有调用路径都经过这里，不会漏记。
+     */
+    private static final class Attempt {
+        // embedding 不经过限流，为 null
+        private final Permit permit;
+        private final ModelGuard guard;
+        // 流式请求的 200 只代表响应头到达，耗时不能和完整响应比
+        private final boolean timed;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Attempt(Permit permit, ModelGuard guard, boolean timed) {
+            this.permit = permit;
+            this.guard = guard;
+            this.timed = timed;
+        }
+
+        /**
+         * 200 为成功；429/5xx 说明上游过载或故障；其余 4xx 与上游健康无关。
+         */
+        void settle(int code) {
+            if (code == 200 && timed && !done.get()) guard.recordLatency(System.nanoTime() - start);
+            if (code == 200) success();
+            else if (code == 429 || code >= 500) dropped();
+            else ignored();
+        }
+
+        void success() {
+            if (!done.compareAndSet(false, true)) return;
+            if (permit != null) permit.success();
+            guard.onSuccess();
+        }
+
+        void dropped() {
+            if (!done.compareAndSet(false, true)) return;
+            if (permit != null) permit.dropped();
+            guard.onFailure();
+        }
+
+        void ignored() {
+            if (!done.compareAndSet(false, true)) return;
+            if (permit != null) permit.ignore();
+            guard.onIgnored();
+        }
+    }
+
+    public interface StreamCallback {
+        void onDelta(String text);
+
+        void onComplete(String fullText);
+
+        void onError(Throwable error);
+    }
+}
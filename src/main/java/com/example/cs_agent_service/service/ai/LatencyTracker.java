@@ -0,0 +1,44 @@
+package com.example.cs_agent_service.service.ai;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * 最近若干次成功调用的延迟（环形缓冲），用于计算对冲延迟。分位值每累计一批新样本才重算一次。
+ */
+final class LatencyTracker {
+
+    private static final int CAPACITY = 256;
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final long[] samples = new long[CAPACITY];
+    private int size = 0;
+    private int next = 0;
+    private int sinceCompute = 0;
+    private double cachedPercentile = -1;
+    private long cached = -1;
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % CAPACITY;
+        if (size < CAPACITY) size++;
+        sinceCompute++;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized OptionalLong percentile(double p, int minSamples) {
+        if (size == 0 || size < minSamples) return OptionalLong.empty();
+        if (cached < 0 || sinceCompute >= RECOMPUTE_EVERY || p != cachedPercentile) {
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int idx = (int) Math.ceil(p * size) - 1;
+            cached = sorted[Math.max(0, Math.min(size - 1, idx))];
+            cachedPercentile = p;
+            sinceCompute = 0;
+        }
+        return OptionalLong.of(cached);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.cs_agent_service.service.ai;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * LLM 请求未发出即被拒绝：并发已满（429）或熔断中（503）。未被降级处理时带 Retry-After 返回。
+ */
+public class LlmOverloadedException extends ResponseStatusException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public LlmOverloadedException(String reason, long retryAfterSeconds) {
+        this(HttpStatus.TOO_MANY_REQUESTS, reason, retryAfterSeconds);
+    }
+
+    public LlmOverloadedException(HttpStatus status, String reason, long retryAfterSeconds) {
+        super(status, reason);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return headers;
+    }
+
+    /**
+     * 在异步链路中异常常被 CompletionException 包装。
+     */
+    public static boolean isCause(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof LlmOverloadedException) return true;
+        }
+        return false;
+    }
+}
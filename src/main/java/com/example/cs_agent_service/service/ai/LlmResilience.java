@@ -0,0 +1,27 @@
+package com.example.cs_agent_service.service.ai;
+
+import com.example.cs_agent_service.config.LlmResilienceProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个模型一个 {@link ModelGuard}（对话模型、embedding 模型各自独立熔断）。
+ */
+@Component
+public class LlmResilience {
+
+    private final LlmResilienceProperties props;
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, ModelGuard> guards = new ConcurrentHashMap<>();
+
+    public LlmResilience(LlmResilienceProperties props, MeterRegistry registry) {
+        this.props = props;
+        this.registry = registry;
+    }
+
+    public ModelGuard forModel(String model) {
+        return guards.computeIfAbsent(model, m -> new ModelGuard(m, props.forModel(m), registry));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.cs_agent_service.service.ai;
+
+import com.example.cs_agent_service.config.LlmResilienceProperties.Policy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.http.HttpStatus;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个模型的熔断器、延迟样本与对冲策略。由 {@link LlmResilience} 按模型名创建。
+ */
+public final class ModelGuard {
+
+    private final String model;
+    private final Policy policy;
+    private final CircuitBreaker breaker;
+    private final LatencyTracker latency = new LatencyTracker();
+
+    private final Counter rejected;
+    private final Counter hedgeFired;
+    private final Counter hedgeWon;
+    private final Counter hedgeSkipped;
+
+    ModelGuard(String model, Policy policy, MeterRegistry registry) {
+        this.model = model;
+        this.policy = policy;
+        this.breaker = new CircuitBreaker(policy, System::nanoTime);
+        Tags tags = Tags.of("model", model);
+        // 0 = CLOSED, 1 = OPEN, 2 = HALF_OPEN
+        registry.gauge("agent.llm.breaker.state", tags, breaker, b -> b.state().ordinal());
+        registry.gauge("agent.llm.hedge.delay", tags, this,
+                g -> g.hedgeDelayNanos().orElse(0) / 1_000_000.0);
+        this.rejected = Counter.builder("agent.llm.breaker.rejected")
+                .description("LLM calls short-circuited by an open circuit breaker")
+                .tags(tags)
+                .register(registry);
+        this.hedgeFired = hedgeCounter(registry, tags, "fired");
+        this.hedgeWon = hedgeCounter(registry, tags, "won");
+        this.hedgeSkipped = hedgeCounter(registry, tags, "skipped");
+    }
+
+    private static Counter hedgeCounter(MeterRegistry registry, Tags tags, String result) {
+        return Counter.builder("agent.llm.hedge")
+                .description("Hedged LLM attempts: fired, won (backup answered first), skipped (no capacity)")
+                .tags(tags)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * 熔断中直接抛出（503 + Retry-After），调用方按 LLM 过载处理（可降级为知识库答案）。
+     */
+    public void acquire() {
+        if (breaker.tryAcquire()) return;
+        rejected.increment();
+        throw new LlmOverloadedException(HttpStatus.SERVICE_UNAVAILABLE,
+                "LLM 熔断中: model=" + model, breaker.retryAfterSeconds());
+    }
+
+    public void onSuccess() {
+        breaker.onSuccess();
+    }
+
+    public void onFailure() {
+        breaker.onFailure();
+    }
+
+    public void onIgnored() {
+        breaker.onIgnored();
+    }
+
+    /**
+     * 非流式调用成功时记录延迟，作为对冲延迟的依据。
+     */
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * 当前对冲延迟：近期延迟的 hedge-percentile 分位，不低于 hedge-min-delay-ms；未开启或样本不足为 empty。
+     */
+    public OptionalLong hedgeDelayNanos() {
+        if (!policy.isHedgeEnabled()) return OptionalLong.empty();
+        OptionalLong p = latency.percentile(policy.getHedgePercentile(), policy.getHedgeMinSamples());
+        if (p.isEmpty()) return p;
+        return OptionalLong.of(Math.max(p.getAsLong(), TimeUnit.MILLISECONDS.toNanos(policy.getHedgeMinDelayMs())));
+    }
+
+    /**
+     * 只在熔断器关闭时对冲，不占用半开试探名额。
+     */
+    public boolean allowHedge() {
+        return breaker.state() == CircuitBreaker.State.CLOSED;
+    }
+
+    void hedgeFired() {
+        hedgeFired.increment();
+    }
+
+    void hedgeWon() {
+        hedgeWon.increment();
+    }
+
+    void hedgeSkipped() {
+        hedgeSkipped.increment();
+    }
+}
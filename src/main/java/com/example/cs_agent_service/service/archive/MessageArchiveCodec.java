@@ -0,0 +1,172 @@
+package com.example.cs_agent_service.service.archive;
+
+import com.example.cs_agent_service.dto.MessageResponse;
+import com.example.cs_agent_service.entity.MessageSender;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 归档块的二进制格式：[版本][条数: varint][原始长度: varint][raw deflate(消息序列)]。
+ * 每条消息：[id 增量: varint][sender 名][createdAt 秒增量: zigzag varint][纳秒: varint][content: UTF-8]，
+ * 字符串都是 [长度: varint][字节]。id 升序、时间相近，增量编码后整数大多只占一两个字节。
+ * 与 ChatResponseCodec 不同，解析失败不能当作 miss（冷数据只有这一份），抛 IllegalArgumentException。
+ */
+public final class MessageArchiveCodec {
+
+    static final byte VERSION = 1;
+    // 防止损坏数据导致过大的解压缓冲
+    private static final int MAX_RAW_BYTES = 64 << 20;
+
+    private MessageArchiveCodec() {
+    }
+
+    /**
+     * @param messages 按 id 升序
+     */
+    public static Encoded encode(List<MessageResponse> messages) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(messages.size() * 64);
+        long prevId = 0;
+        long prevSeconds = 0;
+        for (MessageResponse m : messages) {
+            writeVarint(body, m.id() - prevId);
+            writeString(body, m.sender().name());
+            long seconds = m.createdAt().getEpochSecond();
+            // 缓冲写入的消息 createdAt 不一定随 id 递增，增量可能为负
+            writeVarint(body, zigzag(seconds - prevSeconds));
+            writeVarint(body, m.createdAt().getNano());
+            writeString(body, m.content());
+            prevId = m.id();
+            prevSeconds = seconds;
+        }
+        byte[] raw = body.toByteArray();
+        byte[] deflated = deflate(raw);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length + 12);
+        out.write(VERSION);
+        writeVarint(out, messages.size());
+        writeVarint(out, raw.length);
+        out.write(deflated, 0, deflated.length);
+        return new Encoded(out.toByteArray(), raw.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException 版本不符或数据损坏
+     */
+    public static List<MessageResponse> decode(byte[] data) {
+        if (data == null || data.length < 3 || data[0] != VERSION) {
+            throw new IllegalArgumentException("unsupported archive chunk");
+        }
+        try {
+            int[] pos = {1};
+            int count = (int) readVarint(data, pos);
+            int rawLength = (int) readVarint(data, pos);
+            if (rawLength < 0 || rawLength > MAX_RAW_BYTES) throw new IllegalArgumentException("bad raw length");
+            byte[] raw = inflate(data, pos[0], rawLength);
+
+            List<MessageResponse> out = new ArrayList<>(count);
+            int[] p = {0};
+            long id = 0;
+            long seconds = 0;
+            for (int i = 0; i < count; i++) {
+                id += readVarint(raw, p);
+                MessageSender sender = MessageSender.valueOf(readString(raw, p));
+                seconds += unzigzag(readVarint(raw, p));
+                int nanos = (int) readVarint(raw, p);
+                String content = readString(raw, p);
+                out.add(new MessageResponse(id, sender, content, Instant.ofEpochSecond(seconds, nanos)));
+            }
+            return out;
+        } catch (ArrayIndexOutOfBoundsException | DataFormatException e) {
+            throw new IllegalArgumentException("corrupt archive chunk", e);
+        }
+    }
+
+    /**
+     * @param rawBytes 压缩前的字节数
+     */
+    public record Encoded(byte[] payload, int rawBytes) {}
+
+    private static byte[] deflate(byte[] input) {
+        // 冷数据写一次读很少，取压缩率优先
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] buf = new byte[Math.max(64, input.length / 2)];
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                n += deflater.deflate(buf, n, buf.length - n);
+            }
+            return Arrays.copyOf(buf, n);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            byte[] out = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int r = inflater.inflate(out, n, length - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput())) break;
+                n += r;
+            }
+            if (n != length) throw new DataFormatException("truncated");
+            return out;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, b.length);
+        out.write(b, 0, b.length);
+    }
+
+    private static String readString(byte[] data, int[] pos) {
+        int len = (int) readVarint(data, pos);
+        if (len < 0 || len > data.length - pos[0]) throw new IllegalArgumentException("bad string length");
+        String s = new String(data, pos[0], len, StandardCharsets.UTF_8);
+        pos[0] += len;
+        return s;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data[pos[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("bad varint");
+    }
+}
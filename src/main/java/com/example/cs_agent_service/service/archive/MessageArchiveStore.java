@@ -0,0 +1,132 @@
+package com.example.cs_agent_service.service.archive;
+
+import com.example.cs_agent_service.dto.MessageResponse;
+import com.example.cs_agent_service.entity.Conversation;
+import com.example.cs_agent_service.entity.ConversationStatus;
+import com.example.cs_agent_service.entity.Message;
+import com.example.cs_agent_service.entity.MessageArchive;
+import com.example.cs_agent_service.repo.ConversationRepository;
+import com.example.cs_agent_service.repo.MessageArchiveRepository;
+import com.example.cs_agent_service.repo.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 消息冷存储：已关闭会话的消息从 messages 表移到 message_archive，按块压缩。
+ * <p>
+ * 一个会话的消息在同一事务里写入归档、再从热表删除，读者只会看到其中一层。
+ * 归档块写入后不再修改，解码结果按块 id 缓存，翻页时同一块不必反复解压。
+ */
+@Service
+public class MessageArchiveStore {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final ConversationRepository conversations;
+    private final MessageRepository messages;
+    private final MessageArchiveRepository archives;
+    private final Cache<Long, List<MessageResponse>> decoded;
+
+    private final Counter rawBytes;
+    private final Counter storedBytes;
+
+    public MessageArchiveStore(
+            ConversationRepository conversations,
+            MessageRepository messages,
+            MessageArchiveRepository archives,
+            MeterRegistry registry
+    ) {
+        this.conversations = conversations;
+        this.messages = messages;
+        this.archives = archives;
+        this.decoded = Caffeine.newBuilder()
+                .maximumSize(256)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, decoded, "message.archive");
+        this.rawBytes = Counter.builder("agent.archive.bytes").tag("kind", "raw").register(registry);
+        this.storedBytes = Counter.builder("agent.archive.bytes").tag("kind", "stored").register(registry);
+    }
+
+    /**
+     * 把会话热表里的全部消息移入冷存储。持有会话行锁，并重新确认会话仍满足条件。
+     *
+     * @param cutoff 会话须在此之前关闭
+     * @return 归档的消息数，不满足条件或没有消息时为 0
+     */
+    @Transactional
+    public int archive(Long conversationId, Instant cutoff, int chunkSize) {
+        Conversation c = conversations.findForUpdate(conversationId).orElse(null);
+        if (c == null || c.getStatus() != ConversationStatus.CLOSED || !c.getUpdatedAt().isBefore(cutoff)) return 0;
+
+        int size = Math.max(1, chunkSize);
+        int archived = 0;
+        long lastId = 0;
+        while (true) {
+            List<Message> chunk = messages.findByConversationIdAndIdGreaterThanOrderByIdAsc(
+                    conversationId, lastId, Limit.of(size));
+            if (chunk.isEmpty()) break;
+            List<MessageResponse> rows = chunk.stream().map(MessageArchiveStore::toResponse).toList();
+            MessageArchiveCodec.Encoded encoded = MessageArchiveCodec.encode(rows);
+
+            MessageArchive a = new MessageArchive();
+            a.setConversationId(conversationId);
+            a.setFirstMessageId(rows.get(0).id());
+            a.setLastMessageId(rows.get(rows.size() - 1).id());
+            a.setMessageCount(rows.size());
+            a.setRawBytes(encoded.rawBytes());
+            a.setPayload(encoded.payload());
+            archives.save(a);
+            rawBytes.increment(encoded.rawBytes());
+            storedBytes.increment(encoded.payload().length);
+
+            archived += rows.size();
+            lastId = a.getLastMessageId();
+            // 大会话分块处理，已写入的块不留在持久化上下文里
+            em.flush();
+            em.clear();
+            if (chunk.size() < size) break;
+        }
+        if (archived > 0) messages.deleteArchived(conversationId, lastId);
+        return archived;
+    }
+
+    /**
+     * 与热表相同的翻页语义：id 严格大于 afterId，升序，至多 limit 条。
+     */
+    @Transactional(readOnly = true)
+    public List<MessageResponse> read(Long conversationId, long afterId, int limit) {
+        List<MessageResponse> out = new ArrayList<>(limit);
+        long cursor = afterId;
+        while (out.size() < limit) {
+            List<MessageArchive> next = archives.findByConversationIdAndLastMessageIdGreaterThanOrderByFirstMessageIdAsc(
+                    conversationId, cursor, Limit.of(1));
+            if (next.isEmpty()) break;
+            MessageArchive a = next.get(0);
+            for (MessageResponse m : decoded.get(a.getId(), id -> MessageArchiveCodec.decode(a.getPayload()))) {
+                if (m.id() <= afterId) continue;
+                out.add(m);
+                if (out.size() == limit) break;
+            }
+            cursor = a.getLastMessageId();
+        }
+        return out;
+    }
+
+    private static MessageResponse toResponse(Message m) {
+        return new MessageResponse(m.getId(), m.getSender(), m.getContent(), m.getCreatedAt());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.cs_agent_service.service.archive;
+
+import com.example.cs_agent_service.config.MessageArchiveProperties;
+import com.example.cs_agent_service.entity.ConversationStatus;
+import com.example.cs_agent_service.repo.ConversationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * 定时把关闭超过 retention 的会话的消息移入冷存储，热表只保留活跃和近期会话，
+ * 写入和活跃会话的读取不随历史数据增长而变慢。
+ * <p>
+ * 每个会话单独一个事务，失败只影响该会话，下一轮重试。多节点同时运行时由会话行锁串行化。
+ * 关闭后的会话不再接受写入（状态缓存的 OPEN 窗口只有几十秒），retention 远大于它，
+ * 所以一个会话的消息不会同时分布在两层。
+ */
+@Component
+public class MessageArchiver {
+    private static final Logger log = LoggerFactory.getLogger(MessageArchiver.class);
+
+    private final ConversationRepository conversations;
+    private final MessageArchiveStore store;
+    private final MessageArchiveProperties props;
+
+    private final Counter archivedConversations;
+    private final Counter archivedMessages;
+    private final Counter failures;
+
+    public MessageArchiver(
+            ConversationRepository conversations,
+            MessageArchiveStore store,
+            MessageArchiveProperties props,
+            MeterRegistry registry
+    ) {
+        this.conversations = conversations;
+        this.store = store;
+        this.props = props;
+        this.archivedConversations = Counter.builder("agent.archive.conversations").tag("result", "archived").register(registry);
+        this.failures = Counter.builder("agent.archive.conversations").tag("result", "failed").register(registry);
+        this.archivedMessages = Counter.builder("agent.archive.messages").register(registry);
+    }
+
+    @Scheduled(initialDelayString = "${agent.archive.interval-ms:600000}",
+            fixedDelayString = "${agent.archive.interval-ms:600000}")
+    public void run() {
+        if (!props.isEnabled()) return;
+        Instant cutoff = Instant.now().minus(Duration.ofHours(Math.max(0, props.getRetentionHours())));
+        List<Long> ids;
+        try {
+            ids = conversations.findArchivable(ConversationStatus.CLOSED, cutoff, Limit.of(Math.max(1, props.getBatchSize())));
+        } catch (Exception e) {
+            log.warn("[archive] candidate query failed, skip this run. err={}", e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        int done = 0;
+        long moved = 0;
+        for (Long id : ids) {
+            try {
+                int n = store.archive(id, cutoff, props.getChunkSize());
+                if (n == 0) continue;
+                done++;
+                moved += n;
+                archivedConversations.increment();
+                archivedMessages.increment(n);
+            } catch (Exception e) {
+                failures.increment();
+                log.warn("[archive] conversation={} failed, retry next run. err={}", id, e.getMessage());
+            }
+        }
+        if (done > 0) {
+            log.info("[archive] moved {} messages of {} conversations to cold storage in {}ms",
+                    moved, done, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.CacheWarmupProperties;
+import com.example.cs_agent_service.dto.ChatResponse;
+import com.example.cs_agent_service.repo.KnowledgeBaseRepository;
+import com.example.cs_agent_service.service.ChatService;
+import com.example.cs_agent_service.service.KnowledgeBaseService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 启动预热：按知识库 active 条目的标准问题逐条走一遍 /chat 的异步路径，把答案写进缓存，
+ * 发布后第一波流量不至于全部打到 LLM。已缓存的问题直接命中，不重复调用。
+ * <p>
+ * 在后台固定数量的线程上执行（每线程同一时刻一个问题），进度通过 {@link CacheWarmupHealthIndicator}
+ * 暴露给 readiness 探针。降级答复（LLM 过载）不写缓存，计为失败。
+ */
+@Component
+public class CacheWarmer {
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    public enum Phase { PENDING, RUNNING, DONE, SKIPPED }
+
+    private final ChatService chatService;
+    private final KnowledgeBaseRepository repository;
+    private final CacheWarmupProperties props;
+    private final CacheProperties cacheProps;
+
+    private volatile Phase phase = Phase.PENDING;
+    private volatile int total = 0;
+    private volatile long startedNanos = 0;
+    private final AtomicInteger warmed = new AtomicInteger();
+    private final AtomicInteger refused = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private ExecutorService pool;
+
+    private final Counter warmedCounter;
+    private final Counter refusedCounter;
+    private final Counter failedCounter;
+
+    public CacheWarmer(ChatService chatService, KnowledgeBaseRepository repository, CacheWarmupProperties props,
+                       CacheProperties cacheProps, MeterRegistry registry) {
+        this.chatService = chatService;
+        this.repository = repository;
+        this.props = props;
+        this.cacheProps = cacheProps;
+        this.warmedCounter = Counter.builder("agent.cache.warmup").tag("result", "warmed").register(registry);
+        this.refusedCounter = Counter.builder("agent.cache.warmup").tag("result", "refused").register(registry);
+        this.failedCounter = Counter.builder("agent.cache.warmup").tag("result", "failed").register(registry);
+        registry.gauge("agent.cache.warmup.progress", this, CacheWarmer::progress);
+    }
+
+    /**
+     * ACCEPTING_TRAFFIC 在所有 ApplicationReadyEvent 监听器之后发布：此时检索索引与缓存代号都已加载，
+     * 预热写入的 key 与线上请求一致。
+     */
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC || phase != Phase.PENDING) return;
+        if (!enabled()) {
+            phase = Phase.SKIPPED;
+            if (props.isEnabled()) log.info("[warmup] skipped: response cache disabled");
+            return;
+        }
+        List<String> questions;
+        try {
+            questions = questions(repository.findIndexSources(), props.getTopN());
+        } catch (Exception e) {
+            // 读不到知识库就不预热，不阻塞上线
+            log.warn("[warmup] load knowledge base failed, skip warm-up", e);
+            phase = Phase.SKIPPED;
+            return;
+        }
+        run(questions, chatService::chatAsync);
+    }
+
+    void run(List<String> questions, Function<String, CompletableFuture<ChatResponse>> chat) {
+        total = questions.size();
+        startedNanos = System.nanoTime();
+        phase = Phase.RUNNING;
+        log.info("[warmup] start questions={} concurrency={}", total, props.getConcurrency());
+        if (questions.isEmpty()) {
+            finish();
+            return;
+        }
+
+        AtomicInteger threadId = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(Math.max(1, props.getConcurrency()), r -> {
+            Thread t = new Thread(r, "cache-warmup-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger remaining = new AtomicInteger(total);
+        for (String q : questions) {
+            pool.execute(() -> {
+                warmOne(q, chat);
+                if (remaining.decrementAndGet() == 0) finish();
+            });
+        }
+        // 已提交的任务继续执行完
+        pool.shutdown();
+    }
+
+    private void warmOne(String q, Function<String, CompletableFuture<ChatResponse>> chat) {
+        try {
+            ChatResponse resp = chat.apply(q).join();
+            if (resp.degraded()) {
+                failed.incrementAndGet();
+                failedCounter.increment();
+            } else if (resp.isRefusal()) {
+                refused.incrementAndGet();
+                refusedCounter.increment();
+            } else {
+                warmed.incrementAndGet();
+                warmedCounter.increment();
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            failedCounter.increment();
+            log.debug("[warmup] question failed q='{}' err={}", q, e.getMessage());
+        }
+    }
+
+    private void finish() {
+        phase = Phase.DONE;
+        log.info("[warmup] done total={} warmed={} refused={} failed={} cost={}ms",
+                total, warmed.get(), refused.get(), failed.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos));
+    }
+
+    /**
+     * 预热比例达标、全部跑完、或等待超过 maxWaitSeconds 即视为 ready；未开启预热始终 ready。
+     */
+    public boolean isReady() {
+        return switch (phase) {
+            case DONE, SKIPPED -> true;
+            case PENDING -> !enabled();
+            case RUNNING -> warmed.get() >= Math.ceil(props.getReadyFraction() * total)
+                    || System.nanoTime() - startedNanos >= TimeUnit.SECONDS.toNanos(props.getMaxWaitSeconds());
+        };
+    }
+
+    public Phase phase() { return phase; }
+    public int total() { return total; }
+    public int warmed() { return warmed.get(); }
+    public int refused() { return refused.get(); }
+    public int failed() { return failed.get(); }
+
+    public double progress() {
+        return total == 0 ? (phase == Phase.DONE ? 1.0 : 0.0) : (double) warmed.get() / total;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) pool.shutdownNow();
+    }
+
+    private boolean enabled() {
+        return props.isEnabled() && cacheProps.isEnabled();
+    }
+
+    /**
+     * 按 id 升序取标准问题，归一化后去重；topN > 0 时只取前 N 个。
+     * 条目来自只含启用条目的 {@link KnowledgeBaseRepository#findIndexSources()}，不加载 answer。
+     */
+    static List<String> questions(Collection<KnowledgeBaseRepository.IndexSource> entries, int topN) {
+        Set<String> seen = new HashSet<>();
+        return entries.stream()
+                .filter(kb -> kb.getQuestion() != null && !kb.getQuestion().isBlank())
+                .sorted(Comparator.comparing(KnowledgeBaseRepository.IndexSource::getId))
+                .map(kb -> kb.getQuestion().trim())
+                .filter(q -> seen.add(KnowledgeBaseService.normalizeQuestion(q)))
+                .limit(topN > 0 ? topN : Long.MAX_VALUE)
+                .toList();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.cs_agent_service.service.cache;
+
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存预热进度（health 组件名 cacheWarmup），加入 readiness 组：未达标时为 OUT_OF_SERVICE，
+ * 负载均衡据此暂不导流。
+ */
+@Component
+public class CacheWarmupHealthIndicator implements HealthIndicator {
+
+    private final CacheWarmer warmer;
+
+    public CacheWarmupHealthIndicator(CacheWarmer warmer) {
+        this.warmer = warmer;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = warmer.isReady() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("phase", warmer.phase())
+                .withDetail("total", warmer.total())
+                .withDetail("warmed", warmer.warmed())
+                .withDetail("refused", warmer.refused())
+                .withDetail("failed", warmer.failed())
+                .build();
+    }
+}
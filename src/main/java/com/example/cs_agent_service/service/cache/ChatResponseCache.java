@@ -0,0 +1,171 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.dto.ChatResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 两级问答缓存：L1 为进程内 Caffeine（已解码的响应），L2 为 Redis（{@link ChatResponseCodec} 二进制编码）。
+ * L1 的过期时间取写入 TTL 与 local-ttl-seconds 的较小值，拒答条目沿用 refusal TTL；
+ * L2 命中回填 L1 时取 L2 剩余 TTL（值头部的过期时刻）与 local-ttl-seconds 的较小值，
+ * 不会让条目在 L1 里比 Redis 多活一轮。跨节点失效通过 Redis pub/sub 广播 key。
+ */
+@Service
+public class ChatResponseCache implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(ChatResponseCache.class);
+
+    private final RedisCacheService redis;
+    private final CacheProperties props;
+    private final Cache<String, Entry> local;
+    private final DistributionSummary valueSize;
+    // 用于忽略自己发出的广播
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public ChatResponseCache(RedisCacheService redis, CacheProperties props, MeterRegistry registry) {
+        this.redis = redis;
+        this.props = props;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, props.getLocalMaxEntries()))
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+        // cache.gets{cache=chat.l1, result=hit|miss} 等
+        CaffeineCacheMetrics.monitor(registry, local, "chat.l1");
+        this.valueSize = DistributionSummary.builder("agent.chat.cache.value.size")
+                .description("Encoded size of response cache values written to Redis")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public Optional<ChatResponse> get(String key) {
+        if (props.isLocalEnabled()) {
+            Entry e = local.getIfPresent(key);
+            if (e != null) {
+                log.debug("[cache] L1 hit key={}", key);
+                return Optional.of(e.value());
+            }
+        }
+
+        Optional<byte[]> cached = redis.getBytes(key);
+        if (cached.isEmpty()) return Optional.empty();
+        return fromL2(key, cached.get());
+    }
+
+    /**
+     * 批量查询：先查 L1，剩余的 key 用一次 MGET 查 L2。只返回命中的 key。
+     */
+    public Map<String, ChatResponse> getAll(Collection<String> keys) {
+        Map<String, ChatResponse> found = new HashMap<>();
+        List<String> remote = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Entry e = props.isLocalEnabled() ? local.getIfPresent(key) : null;
+            if (e != null) {
+                found.put(key, e.value());
+            } else {
+                remote.add(key);
+            }
+        }
+
+        List<byte[]> values = redis.multiGetBytes(remote);
+        for (int i = 0; i < remote.size(); i++) {
+            byte[] data = values.get(i);
+            if (data == null) continue;
+            String key = remote.get(i);
+            fromL2(key, data).ifPresent(v -> found.put(key, v));
+        }
+        log.debug("[cache] batch lookup keys={} hits={} mget={}", keys.size(), found.size(), remote.size());
+        return found;
+    }
+
+    /**
+     * 版本不符（旧格式）或解析失败视为 cache miss。剩余 TTL 已不足（时钟偏差）时照常返回，但不回填 L1。
+     */
+    private Optional<ChatResponse> fromL2(String key, byte[] data) {
+        Optional<ChatResponseCodec.Decoded> decoded = ChatResponseCodec.decodeEntry(data);
+        decoded.ifPresent(d -> {
+            putLocal(key, d.value(), d.expiresAtMillis() - System.currentTimeMillis());
+            log.debug("[cache] L2 hit key={}", key);
+        });
+        return decoded.map(ChatResponseCodec.Decoded::value);
+    }
+
+    public void put(String key, ChatResponse resp, long ttlSeconds) {
+        if (ttlSeconds <= 0) return;
+        long ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        putLocal(key, resp, ttlMillis);
+        byte[] data = ChatResponseCodec.encode(resp, System.currentTimeMillis() + ttlMillis, props.getCompressThresholdBytes());
+        valueSize.record(data.length);
+        redis.setBytes(key, data, ttlSeconds);
+    }
+
+    /**
+     * 本节点立即失效，并通知其他节点。
+     */
+    public void evict(String key) {
+        local.invalidate(key);
+        redis.publish(props.getInvalidationChannel(), nodeId + "|" + key);
+    }
+
+    /**
+     * 只清本节点 L1（知识库代际变化时各节点各自执行）。
+     */
+    public void clearLocal() {
+        local.invalidateAll();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep < 0 || body.substring(0, sep).equals(nodeId)) return;
+        String key = body.substring(sep + 1);
+        local.invalidate(key);
+        log.debug("[cache] L1 invalidated by peer key={}", key);
+    }
+
+    private void putLocal(String key, ChatResponse value, long ttlMillis) {
+        if (!props.isLocalEnabled()) return;
+        long ttl = Math.min(ttlMillis, TimeUnit.SECONDS.toMillis(props.getLocalTtlSeconds()));
+        if (ttl <= 0) return;
+        local.put(key, new Entry(value, TimeUnit.MILLISECONDS.toNanos(ttl)));
+    }
+
+    private record Entry(ChatResponse value, long ttlNanos) {}
+
+    private static final class EntryExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry value, long currentTime) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
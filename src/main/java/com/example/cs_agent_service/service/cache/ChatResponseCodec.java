@@ -0,0 +1,136 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.dto.ChatResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 缓存值的二进制格式：[版本][标志][过期时刻: 8 字节 epoch 毫秒][hits: varint][answer: UTF-8，超过阈值时 raw deflate 压缩]。
+ * 版本不符（包括旧的 JSON 文本值，首字节为 '{'）或解析失败一律视为 miss。
+ * 只编码可缓存的字段（answer、hits）；过期时刻与 Redis TTL 一致，L2 命中后回填 L1 时用它限制 L1 的过期时间。
+ */
+public final class ChatResponseCodec {
+
+    static final byte VERSION = 2;
+    private static final int HEADER = 10;
+    private static final int FLAG_DEFLATE = 1;
+    // 防止损坏数据导致过大的解压缓冲
+    private static final int MAX_ANSWER_BYTES = 1 << 20;
+
+    private ChatResponseCodec() {
+    }
+
+    public record Decoded(ChatResponse value, long expiresAtMillis) {}
+
+    /**
+     * @param expiresAtMillis   与 Redis TTL 对应的过期时刻
+     * @param compressThreshold answer 的 UTF-8 字节数达到该值时尝试压缩，<= 0 表示不压缩
+     */
+    public static byte[] encode(ChatResponse resp, long expiresAtMillis, int compressThreshold) {
+        byte[] text = resp.answer() == null ? new byte[0] : resp.answer().getBytes(StandardCharsets.UTF_8);
+        int flags = 0;
+        byte[] payload = text;
+        if (compressThreshold > 0 && text.length >= compressThreshold) {
+            byte[] deflated = deflate(text);
+            // 压缩后还要记录原始长度，不划算就存原文
+            if (deflated.length + 5 < text.length) {
+                payload = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + HEADER + 10);
+        out.write(VERSION);
+        out.write(flags);
+        for (int shift = 56; shift >= 0; shift -= 8) out.write((int) (expiresAtMillis >>> shift));
+        writeVarint(out, resp.hits());
+        if ((flags & FLAG_DEFLATE) != 0) writeVarint(out, text.length);
+        out.write(payload, 0, payload.length);
+        return out.toByteArray();
+    }
+
+    public static Optional<ChatResponse> decode(byte[] data) {
+        return decodeEntry(data).map(Decoded::value);
+    }
+
+    public static Optional<Decoded> decodeEntry(byte[] data) {
+        if (data == null || data.length < HEADER + 1 || data[0] != VERSION) return Optional.empty();
+        try {
+            int flags = data[1];
+            long expiresAt = 0;
+            for (int i = 2; i < HEADER; i++) expiresAt = (expiresAt << 8) | (data[i] & 0xFF);
+            int[] pos = {HEADER};
+            int hits = readVarint(data, pos);
+            String answer;
+            if ((flags & FLAG_DEFLATE) != 0) {
+                int length = readVarint(data, pos);
+                if (length > MAX_ANSWER_BYTES) return Optional.empty();
+                answer = new String(inflate(data, pos[0], length), StandardCharsets.UTF_8);
+            } else {
+                answer = new String(data, pos[0], data.length - pos[0], StandardCharsets.UTF_8);
+            }
+            return Optional.of(new Decoded(ChatResponse.of(answer, hits), expiresAt));
+        } catch (RuntimeException | DataFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] buf = new byte[input.length + 64];
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                n += deflater.deflate(buf, n, buf.length - n);
+            }
+            return Arrays.copyOf(buf, n);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset, data.length - offset);
+            byte[] out = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int r = inflater.inflate(out, n, length - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput())) break;
+                n += r;
+            }
+            if (n != length) throw new DataFormatException("truncated");
+            return out;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = data[pos[0]++];
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("bad varint");
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.ConversationStatusProperties;
+import com.example.cs_agent_service.entity.ConversationStatus;
+import com.example.cs_agent_service.repo.ConversationRepository;
+import com.example.cs_agent_service.service.ConversationClosed;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 会话状态的进程内缓存：写消息前的 OPEN/CLOSED 校验大多不再查库。
+ * <p>
+ * 状态只会 OPEN -> CLOSED，CLOSED 是终态，缓存它永远正确；OPEN 可能已被其他节点关闭，
+ * 所以关闭时通过 Redis pub/sub 广播，各节点直接把条目改成 CLOSED。广播丢失时 OPEN 条目最多
+ * open-ttl-seconds 后过期重新查库。会话不存在的结果不缓存。
+ */
+@Service
+public class ConversationStatusCache implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(ConversationStatusCache.class);
+
+    private final Function<Long, Optional<ConversationStatus>> loader;
+    private final RedisCacheService redis;
+    private final CacheProperties cacheProps;
+    private final ConversationStatusProperties props;
+    private final Cache<Long, ConversationStatus> local;
+    // 用于忽略自己发出的广播
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    public ConversationStatusCache(
+            ConversationRepository repo,
+            RedisCacheService redis,
+            CacheProperties cacheProps,
+            ConversationStatusProperties props,
+            MeterRegistry registry
+    ) {
+        this(repo::findStatusById, redis, cacheProps, props, registry);
+    }
+
+    ConversationStatusCache(
+            Function<Long, Optional<ConversationStatus>> loader,
+            RedisCacheService redis,
+            CacheProperties cacheProps,
+            ConversationStatusProperties props,
+            MeterRegistry registry
+    ) {
+        this.loader = loader;
+        this.redis = redis;
+        this.cacheProps = cacheProps;
+        this.props = props;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, props.getMaxEntries()))
+                .expireAfter(new StatusExpiry())
+                .recordStats()
+                .build();
+        // cache.gets{cache=conversation.status, result=hit|miss}
+        CaffeineCacheMetrics.monitor(registry, local, "conversation.status");
+    }
+
+    /**
+     * @return 会话不存在时为空
+     */
+    public Optional<ConversationStatus> get(Long conversationId) {
+        if (!props.isEnabled()) return loader.apply(conversationId);
+        ConversationStatus cached = local.getIfPresent(conversationId);
+        if (cached != null) return Optional.of(cached);
+        Optional<ConversationStatus> loaded = loader.apply(conversationId);
+        loaded.ifPresent(s -> remember(conversationId, s));
+        return loaded;
+    }
+
+    /**
+     * 新建的会话马上会有消息写入，直接记为 OPEN，省掉第一次查库。
+     */
+    public void opened(Long conversationId) {
+        if (props.isEnabled()) remember(conversationId, ConversationStatus.OPEN);
+    }
+
+    /**
+     * 关闭提交后才记 CLOSED 并广播；回滚的关闭若先进了缓存，要等 closed-ttl-seconds 才会纠正。
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClosed(ConversationClosed event) {
+        closed(event.conversationId());
+    }
+
+    public void closed(Long conversationId) {
+        if (!props.isEnabled()) return;
+        local.put(conversationId, ConversationStatus.CLOSED);
+        // 单节点（未启用 Redis）不需要广播
+        if (cacheProps.isEnabled()) redis.publish(props.getChannel(), nodeId + "|" + conversationId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf('|');
+        if (sep < 0 || body.substring(0, sep).equals(nodeId)) return;
+        try {
+            local.put(Long.parseLong(body.substring(sep + 1)), ConversationStatus.CLOSED);
+        } catch (NumberFormatException ignored) {
+            // 非法消息忽略
+        }
+        log.debug("[conversation] closed by peer id={}", body.substring(sep + 1));
+    }
+
+    /**
+     * 查库结果可能比刚收到的关闭广播旧：已是 CLOSED 的条目不被 OPEN 覆盖。
+     */
+    private void remember(Long conversationId, ConversationStatus status) {
+        local.asMap().merge(conversationId, status,
+                (old, fresh) -> old == ConversationStatus.CLOSED ? old : fresh);
+    }
+
+    private final class StatusExpiry implements Expiry<Long, ConversationStatus> {
+        @Override
+        public long expireAfterCreate(Long key, ConversationStatus value, long currentTime) {
+            return ttlNanos(value);
+        }
+
+        @Override
+        public long expireAfterUpdate(Long key, ConversationStatus value, long currentTime, long currentDuration) {
+            return ttlNanos(value);
+        }
+
+        @Override
+        public long expireAfterRead(Long key, ConversationStatus value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        private long ttlNanos(ConversationStatus value) {
+            long seconds = value == ConversationStatus.CLOSED ? props.getClosedTtlSeconds() : props.getOpenTtlSeconds();
+            return TimeUnit.SECONDS.toNanos(Math.max(1, seconds));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.repo.KnowledgeBaseRepository;
+import com.example.cs_agent_service.service.change.KnowledgeChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 知识库代际（generation）：Redis 计数器 agent:kb:gen，嵌入问答缓存 key。
+ * <ul>
+ *   <li>新增条目、修改 question/keywords 会改变任意问题的检索结果 -> bump 代际，旧 key 全部失效；</li>
+ *   <li>只改 answer 或停用条目只影响检索命中过它的答案 -> 按依赖集合精确删除。</li>
+ * </ul>
+ * 本地缓存当前代际，由 pub/sub 推送更新，并定时从 Redis 拉取兜底，查询路径不额外访问 Redis。
+ * <p>
+ * 答案先登记依赖再写缓存，写完按条目版本复核（{@link #verifyAnswer}）：计算期间被修改的条目
+ * 要么在复核时发现，要么修改后的 invalidateEntry 能从依赖集合里找到这条答案。
+ */
+@Service
+public class KbGenerationService implements MessageListener {
+    private static final Logger log = LoggerFactory.getLogger(KbGenerationService.class);
+
+    static final String GENERATION_KEY = "agent:kb:gen";
+    private static final String DEPS_PREFIX = "agent:kb:deps:";
+
+    private final RedisCacheService redis;
+    private final ChatResponseCache chatCache;
+    private final SemanticCache semanticCache;
+    private final CacheProperties props;
+    private final KnowledgeBaseRepository repository;
+
+    private volatile long generation = 0;
+    // INCR 失败的 bump：不在本地自行 +1（各节点会各算各的），由定时刷新重试到成功为止
+    private volatile boolean bumpPending = false;
+
+    public KbGenerationService(
+            RedisCacheService redis,
+            ChatResponseCache chatCache,
+            SemanticCache semanticCache,
+            CacheProperties props,
+            KnowledgeBaseRepository repository
+    ) {
+        this.redis = redis;
+        this.chatCache = chatCache;
+        this.semanticCache = semanticCache;
+        this.props = props;
+        this.repository = repository;
+    }
+
+    public long current() {
+        return generation;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${agent.cache.generation-poll-ms:10000}")
+    public void refresh() {
+        if (!props.isEnabled()) return;
+        if (bumpPending) {
+            bump();
+            return;
+        }
+        redis.get(GENERATION_KEY).ifPresent(v -> {
+            try {
+                apply(Long.parseLong(v));
+            } catch (NumberFormatException ignored) {
+                // 非法值忽略
+            }
+        });
+    }
+
+    /**
+     * 代际与依赖集合都在 Redis 里，本身就对所有节点生效：只处理本节点发起的变更，其他节点传来的忽略。
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeChange(KnowledgeChange change) {
+        if (change.remote()) return;
+        switch (change.kind()) {
+            // 新条目可能成为任意问题的命中（包括之前拒答的问题）
+            case CREATED, RELOADED -> bump();
+            case UPDATED -> {
+                if (change.retrievalChanged()) bump();
+                else invalidateEntry(change.id());
+            }
+            // 停用只影响检索命中过它的答案
+            case DEACTIVATED -> invalidateEntry(change.id());
+        }
+    }
+
+    /**
+     * 全局失效：所有旧代际的问答缓存不再可达（由 TTL 回收）。
+     * INCR 失败时先清掉本节点的 L1 与语义索引，并在每次定时刷新时重试，直到 Redis 里的代际真正前进。
+     */
+    public void bump() {
+        if (!props.isEnabled()) return;
+        Optional<Long> next = redis.incr(GENERATION_KEY);
+        if (next.isEmpty()) {
+            bumpPending = true;
+            clearLocal();
+            log.error("[cache] kb generation bump failed, cached answers may be stale until retry succeeds");
+            return;
+        }
+        bumpPending = false;
+        long gen = next.get();
+        apply(gen);
+        redis.publish(props.getGenerationChannel(), Long.toString(gen));
+        log.info("[cache] kb generation bumped to {}", gen);
+    }
+
+    /**
+     * 记录 cacheKey 的答案用到了哪些知识库条目。
+     */
+    public void recordDependencies(String cacheKey, Collection<Long> kbIds, long ttlSeconds) {
+        if (!props.isEnabled() || ttlSeconds <= 0) return;
+        for (Long id : kbIds) {
+            if (id != null) redis.addToSet(DEPS_PREFIX + id, cacheKey, ttlSeconds);
+        }
+    }
+
+    /**
+     * 精确失效：删除所有用到该条目的答案，并通知各节点清掉 L1。
+     */
+    public void invalidateEntry(Long kbId) {
+        if (!props.isEnabled() || kbId == null) return;
+        Set<String> keys = redis.drainSet(DEPS_PREFIX + kbId);
+        evict(keys);
+        log.info("[cache] kb entry {} changed, invalidated {} answers", kbId, keys.size());
+    }
+
+    /**
+     * 答案写入缓存后复核：检索到的条目在计算期间被修改或停用（版本不同），就删掉刚写入的答案。
+     * 依赖必须在写缓存之前登记；复核之后的修改由 invalidateEntry 负责。
+     *
+     * @return 答案仍有效
+     */
+    public boolean verifyAnswer(String cacheKey, List<KnowledgeBase> hits) {
+        if (!props.isEnabled() || hits.isEmpty()) return true;
+        Map<Long, Long> seen = new HashMap<>();
+        for (KnowledgeBase kb : hits) seen.put(kb.getId(), kb.getVersion());
+        int current = 0;
+        try {
+            for (KnowledgeBaseRepository.VersionOf v : repository.findVersions(seen.keySet())) {
+                if (Boolean.TRUE.equals(v.getActive()) && Objects.equals(seen.get(v.getId()), v.getVersion())) current++;
+            }
+        } catch (Exception e) {
+            log.warn("[cache] answer verify failed, evict key={} err={}", cacheKey, e.getMessage());
+        }
+        if (current == seen.size()) return true;
+        evict(List.of(cacheKey));
+        log.info("[cache] kb entries changed while answering, evicted key={}", cacheKey);
+        return false;
+    }
+
+    private void evict(Collection<String> keys) {
+        redis.delete(keys);
+        for (String key : keys) {
+            chatCache.evict(key);
+            semanticCache.forget(key);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            apply(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8).trim()));
+        } catch (NumberFormatException ignored) {
+            // 非法消息忽略
+        }
+    }
+
+    private synchronized void apply(long gen) {
+        if (gen == generation) return;
+        generation = gen;
+        // 旧代际的条目已不可达：释放 L1，清掉指向旧 key 的语义索引
+        clearLocal();
+    }
+
+    private void clearLocal() {
+        chatCache.clearLocal();
+        semanticCache.clear();
+    }
+}
@@ -1,21 +1,51 @@
 package com.example.cs_agent_service.service.cache;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 @Service
 public class RedisCacheService {
     private static final Logger log = LoggerFactory.getLogger(RedisCacheService.class);
 
+    // 只删除自己持有的锁
+    private static final RedisScript<Long> UNLOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    // drainSet 每次 SPOP 的成员数
+    private static final int DRAIN_BATCH = 500;
+
     private final StringRedisTemplate redis;
+    private final MeterRegistry registry;
 
-    public RedisCacheService(StringRedisTemplate redis) {
+    public RedisCacheService(StringRedisTemplate redis, MeterRegistry registry) {
         this.redis = redis;
+        this.registry = registry;
     }
 
     public Optional<String> get(String key) {
@@ -24,17 +54,215 @@ public class RedisCacheService {
             return Optional.ofNullable(v);
         } catch (Exception e) {
             // 降级：缓存挂了也不能影响主链路
+            failed("get");
+            log.warn("[cache] redis GET failed, degrade to miss. key={}", key, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 二进制值（问答缓存）：直接走连接，不经过字符串序列化。
+     */
+    public Optional<byte[]> getBytes(String key) {
+        try {
+            return Optional.ofNullable(redis.execute((RedisCallback<byte[]>) c -> c.stringCommands().get(raw(key))));
+        } catch (Exception e) {
+            failed("get");
             log.warn("[cache] redis GET failed, degrade to miss. key={}", key, e);
             return Optional.empty();
         }
     }
 
+    public void setBytes(String key, byte[] value, long ttlSeconds) {
+        try {
+            redis.execute((RedisCallback<Boolean>) c ->
+                    c.stringCommands().set(raw(key), value, Expiration.seconds(ttlSeconds), SetOption.upsert()));
+        } catch (Exception e) {
+            failed("set");
+            log.warn("[cache] redis SET failed, degrade ignore. key={}", key, e);
+        }
+    }
+
+    /**
+     * MGET：一次往返取多个 key，结果与 keys 一一对应，不存在的为 null。
+     */
+    public List<byte[]> multiGetBytes(List<String> keys) {
+        if (keys.isEmpty()) return List.of();
+        try {
+            byte[][] raw = keys.stream().map(RedisCacheService::raw).toArray(byte[][]::new);
+            List<byte[]> values = redis.execute((RedisCallback<List<byte[]>>) c -> c.stringCommands().mGet(raw));
+            if (values != null) return values;
+        } catch (Exception e) {
+            // 降级：整批视为 miss
+            failed("mget");
+            log.warn("[cache] redis MGET failed, degrade to miss. keys={}", keys.size(), e);
+        }
+        return Collections.nCopies(keys.size(), null);
+    }
+
     public void set(String key, String value, long ttlSeconds) {
         try {
             redis.opsForValue().set(key, value, Duration.ofSeconds(ttlSeconds));
         } catch (Exception e) {
             // 降级：写失败不影响主链路
+            failed("set");
             log.warn("[cache] redis SET failed, degrade ignore. key={}", key, e);
         }
     }
+
+    public void publish(String channel, String message) {
+        try {
+            redis.convertAndSend(channel, message);
+        } catch (Exception e) {
+            // 降级：广播失败只会让其他节点的 L1 多保留到 TTL
+            failed("publish");
+            log.warn("[cache] redis PUBLISH failed, degrade ignore. channel={}", channel, e);
+        }
+    }
+
+    /**
+     * SET NX EX。Redis 不可用时返回 true：降级为不加锁，由调用方自己计算。
+     */
+    public boolean tryLock(String key, String token, long ttlSeconds) {
+        try {
+            return Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(key, token, Duration.ofSeconds(ttlSeconds)));
+        } catch (Exception e) {
+            failed("setnx");
+            log.warn("[cache] redis SETNX failed, degrade to no lock. key={}", key, e);
+            return true;
+        }
+    }
+
+    public void unlock(String key, String token) {
+        try {
+            redis.execute(UNLOCK, List.of(key), token);
+        } catch (Exception e) {
+            // 降级：锁会在 TTL 后自动释放
+            failed("unlock");
+            log.warn("[cache] redis UNLOCK failed, degrade ignore. key={}", key, e);
+        }
+    }
+
+    public boolean exists(String key) {
+        try {
+            return Boolean.TRUE.equals(redis.hasKey(key));
+        } catch (Exception e) {
+            failed("exists");
+            log.warn("[cache] redis EXISTS failed, degrade to false. key={}", key, e);
+            return false;
+        }
+    }
+
+    public Optional<Long> incr(String key) {
+        try {
+            return Optional.ofNullable(redis.opsForValue().increment(key));
+        } catch (Exception e) {
+            failed("incr");
+            log.warn("[cache] redis INCR failed, degrade ignore. key={}", key, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * SADD + EXPIRE（每次写入刷新过期时间）。
+     */
+    public void addToSet(String key, String member, long ttlSeconds) {
+        try {
+            redis.opsForSet().add(key, member);
+            redis.expire(key, Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            failed("sadd");
+            log.warn("[cache] redis SADD failed, degrade ignore. key={}", key, e);
+        }
+    }
+
+    /**
+     * 分批 SPOP 取出集合全部成员（集合空了 Redis 自动删除 key）。
+     * 每次 SPOP 取出即删除，与并发的 SADD 不会交错丢成员：后加入的要么本次取到，要么留给下一次。
+     */
+    public Set<String> drainSet(String key) {
+        Set<String> out = new HashSet<>();
+        try {
+            while (true) {
+                List<String> popped = redis.opsForSet().pop(key, DRAIN_BATCH);
+                if (popped == null || popped.isEmpty()) return out;
+                out.addAll(popped);
+            }
+        } catch (Exception e) {
+            failed("spop");
+            // 已取出的成员照常返回，剩下的还在集合里
+            log.warn("[cache] redis SPOP failed, degrade to partial. key={} drained={}", key, out.size(), e);
+            return out;
+        }
+    }
+
+    public void delete(Collection<String> keys) {
+        if (keys.isEmpty()) return;
+        try {
+            redis.delete(keys);
+        } catch (Exception e) {
+            failed("del");
+            log.warn("[cache] redis DEL failed, degrade ignore. keys={}", keys.size(), e);
+        }
+    }
+
+    /**
+     * XADD MAXLEN ~ maxLen：近似裁剪，超出部分整块丢弃，开销比精确裁剪小。
+     */
+    public void streamAdd(String key, Map<String, String> fields, long maxLen) {
+        try {
+            redis.opsForStream().add(key, fields, XAddOptions.maxlen(maxLen).approximateTrimming(true));
+        } catch (Exception e) {
+            failed("xadd");
+            log.warn("[cache] redis XADD failed, degrade ignore. key={}", key, e);
+        }
+    }
+
+    /**
+     * 非阻塞 XREAD：afterId 之后的至多 count 条。失败时返回空，调用方保留游标下次重试。
+     */
+    public List<MapRecord<String, Object, Object>> streamRead(String key, String afterId, int count) {
+        // read(...) 的参数是泛型变长 StreamOffset<K>...，只能显式建数组；数组只读一个元素，不会有堆污染
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        StreamOffset<String>[] offsets = new StreamOffset[] {StreamOffset.create(key, ReadOffset.from(afterId))};
+        try {
+            List<MapRecord<String, Object, Object>> records = redis.opsForStream()
+                    .read(StreamReadOptions.empty().count(count), offsets);
+            return records == null ? List.of() : records;
+        } catch (Exception e) {
+            failed("xread");
+            log.warn("[cache] redis XREAD failed, degrade to empty. key={}", key, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * 流最后一条的 id，流不存在时为 0-0；Redis 不可用时为空。
+     */
+    public Optional<String> streamLastId(String key) {
+        try {
+            List<MapRecord<String, Object, Object>> last = redis.opsForStream()
+                    .reverseRange(key, Range.unbounded(), Limit.limit().count(1));
+            return Optional.of(last == null || last.isEmpty() ? "0-0" : last.get(0).getId().getValue());
+        } catch (Exception e) {
+            failed("xrevrange");
+            log.warn("[cache] redis XREVRANGE failed. key={}", key, e);
+            return Optional.empty();
+        }
+    }
+
+    private static byte[] raw(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 降级本身不抛异常，失败只能从这里观测。
+     */
+    private void failed(String op) {
+        Counter.builder("agent.redis.failures")
+                .description("Redis operations that failed and were degraded")
+                .tag("op", op)
+                .register(registry)
+                .increment();
+    }
 }
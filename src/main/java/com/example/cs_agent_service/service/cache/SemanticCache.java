@@ -0,0 +1,152 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.SemanticCacheProperties;
+import com.example.cs_agent_service.service.KnowledgeBaseService;
+import com.example.cs_agent_service.service.embedding.EmbeddingProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 语义近似缓存：记录已缓存问题的向量 -> 精确缓存 key，新问题精确 miss 时
+ * 找相似度最高且超过阈值的已缓存问题，复用其答案（答案本身仍在 L1/L2 里）。
+ * 向量表只在本节点内存中，容量有界，按写入顺序淘汰最旧的条目。
+ */
+@Component
+public class SemanticCache {
+    private static final Logger log = LoggerFactory.getLogger(SemanticCache.class);
+
+    private final EmbeddingProvider embeddings;
+    private final SemanticCacheProperties props;
+    // 同一问题 lookup 与 remember 各需一次向量，远程 provider 时避免重复请求
+    private final Cache<String, float[]> vectorMemo = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterWrite(Duration.ofMinutes(2))
+            .build();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public SemanticCache(EmbeddingProvider embeddings, SemanticCacheProperties props, MeterRegistry registry) {
+        this.embeddings = embeddings;
+        this.props = props;
+        this.hits = Counter.builder("agent.chat.semantic.lookups").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("agent.chat.semantic.lookups").tag("result", "miss").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return props.isEnabled();
+    }
+
+    /**
+     * @return 最相似的已缓存问题对应的精确缓存 key
+     */
+    public Optional<String> nearestKey(String question) {
+        if (!props.isEnabled()) return Optional.empty();
+        float[] v = vectorOf(question);
+        if (v == null) return Optional.empty();
+
+        long now = System.currentTimeMillis();
+        String bestKey = null;
+        double best = props.getThreshold();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (entry.expireAt() < now) continue;
+                double sim = EmbeddingProvider.cosine(v, entry.vector());
+                if (sim >= best) {
+                    best = sim;
+                    bestKey = e.getKey();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (bestKey == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        log.debug("[semantic] hit sim={} key={}", best, bestKey);
+        return Optional.of(bestKey);
+    }
+
+    public void remember(String question, String cacheKey, long ttlSeconds) {
+        if (!props.isEnabled() || ttlSeconds <= 0) return;
+        float[] v = vectorOf(question);
+        if (v == null) return;
+
+        long expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        lock.writeLock().lock();
+        try {
+            entries.remove(cacheKey);
+            entries.put(cacheKey, new Entry(v, expireAt));
+            evictOverflow();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 精确缓存已不存在（过期/失效）时调用。
+     */
+    public void forget(String cacheKey) {
+        lock.writeLock().lock();
+        try {
+            entries.remove(cacheKey);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void evictOverflow() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && entries.size() > Math.max(1, props.getMaxEntries())) {
+            it.next();
+            it.remove();
+        }
+        // 顺带清理过期条目
+        entries.values().removeIf(e -> e.expireAt() < now);
+    }
+
+    private float[] vectorOf(String question) {
+        String core = KnowledgeBaseService.normalizeQuestion(question);
+        if (core.isBlank()) return null;
+        try {
+            return vectorMemo.get(core, embeddings::embed);
+        } catch (Exception e) {
+            // 向量化失败只影响语义缓存，不影响主链路
+            log.warn("[semantic] embed failed, skip. err={}", e.getMessage());
+            return null;
+        }
+    }
+
+    private record Entry(float[] vector, long expireAt) {}
+}
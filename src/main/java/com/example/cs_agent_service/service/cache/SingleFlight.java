@@ -0,0 +1,64 @@
+package com.example.cs_agent_service.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 同一个 key 同时只允许一次计算，其余并发调用等待并共享结果（包括异常）。
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter coalesced;
+
+    public SingleFlight(MeterRegistry registry) {
+        this.leaders = Counter.builder("agent.chat.singleflight.calls")
+                .description("Computations actually executed")
+                .tag("role", "leader")
+                .register(registry);
+        this.coalesced = Counter.builder("agent.chat.singleflight.calls")
+                .description("Calls that waited on an in-flight computation")
+                .tag("role", "waiter")
+                .register(registry);
+        registry.gauge("agent.chat.singleflight.inflight", inFlight, ConcurrentMap::size);
+    }
+
+    /**
+     * waiter 直接拿到 leader 的 future。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return (CompletableFuture<T>) existing.thenApply(v -> v);
+        }
+
+        leaders.increment();
+        CompletableFuture<T> result;
+        try {
+            result = loader.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((v, e) -> {
+            inFlight.remove(key, mine);
+            if (e != null) {
+                mine.completeExceptionally(e instanceof CompletionException ce && ce.getCause() != null ? ce.getCause() : e);
+            } else {
+                mine.complete(v);
+            }
+        });
+        return result;
+    }
+}
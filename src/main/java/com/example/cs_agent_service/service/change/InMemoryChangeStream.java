@@ -0,0 +1,48 @@
+package com.example.cs_agent_service.service.change;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 进程内变更流（agent.kb-changes.transport=memory）：单节点部署和测试的替身，
+ * 多个 {@link KnowledgeChangeFeed} 共用一个实例即可模拟多节点。
+ * 游标是追加序号；和 Redis 的 MAXLEN 一样只保留最近 maxLen 条，落后更多的读者直接跳到最早的保留条目。
+ */
+public class InMemoryChangeStream implements KnowledgeChangeStream {
+
+    private final long maxLen;
+    private final List<Map<String, String>> entries = new ArrayList<>();
+    // 已裁掉的条数，entries.get(i) 的序号是 dropped + i + 1
+    private long dropped;
+
+    public InMemoryChangeStream(long maxLen) {
+        this.maxLen = Math.max(1, maxLen);
+    }
+
+    @Override
+    public synchronized void append(Map<String, String> fields) {
+        entries.add(Map.copyOf(fields));
+        int excess = (int) (entries.size() - maxLen);
+        if (excess > 0) {
+            entries.subList(0, excess).clear();
+            dropped += excess;
+        }
+    }
+
+    @Override
+    public synchronized Optional<String> tail() {
+        return Optional.of(Long.toString(dropped + entries.size()));
+    }
+
+    @Override
+    public synchronized List<Entry> readAfter(String cursor, int count) {
+        int from = (int) Math.max(0, Long.parseLong(cursor) - dropped);
+        List<Entry> out = new ArrayList<>();
+        for (int i = from; i < entries.size() && out.size() < count; i++) {
+            out.add(new Entry(Long.toString(dropped + i + 1), entries.get(i)));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.cs_agent_service.service.change;
+
+import com.example.cs_agent_service.entity.KnowledgeBase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 知识库条目变更事件，随事务提交后发布（@TransactionalEventListener），回滚的修改不会发出。
+ * 只带派生结构需要的字段，不含 answer。
+ * <p>
+ * remote=true 表示从变更流收到的其他节点事件：各节点都要更新本地索引，
+ * 但本身就是全局生效的副作用（缓存代际、依赖失效）只由发起节点执行一次。
+ *
+ * @param version          条目的乐观锁版本，用来丢弃迟到的旧事件
+ * @param retrievalChanged question/keywords 是否变化（影响任意问题的检索结果）
+ * @param questionChanged  question 是否变化（向量只由 question 生成）
+ */
+public record KnowledgeChange(
+        Kind kind,
+        long id,
+        long version,
+        String question,
+        String keywords,
+        boolean active,
+        boolean retrievalChanged,
+        boolean questionChanged,
+        boolean remote
+) {
+
+    public enum Kind {
+        CREATED,
+        UPDATED,
+        DEACTIVATED,
+        // 批量变更（导入）：逐条事件不现实，各节点整体重建
+        RELOADED
+    }
+
+    public static KnowledgeChange created(KnowledgeBase kb) {
+        return of(Kind.CREATED, kb, true, true);
+    }
+
+    public static KnowledgeChange updated(KnowledgeBase kb, boolean retrievalChanged, boolean questionChanged) {
+        return of(Kind.UPDATED, kb, retrievalChanged, questionChanged);
+    }
+
+    public static KnowledgeChange deactivated(KnowledgeBase kb) {
+        return of(Kind.DEACTIVATED, kb, true, false);
+    }
+
+    public static KnowledgeChange reloaded() {
+        return new KnowledgeChange(Kind.RELOADED, 0, 0, null, null, true, true, true, false);
+    }
+
+    private static KnowledgeChange of(Kind kind, KnowledgeBase kb, boolean retrievalChanged, boolean questionChanged) {
+        return new KnowledgeChange(kind, kb.getId(), kb.getVersion(), kb.getQuestion(), kb.getKeywords(),
+                Boolean.TRUE.equals(kb.getActive()), retrievalChanged, questionChanged, false);
+    }
+
+    public KnowledgeChange asRemote() {
+        return new KnowledgeChange(kind, id, version, question, keywords, active, retrievalChanged, questionChanged, true);
+    }
+
+    /**
+     * 流里的字段表示（Redis Stream 条目是 field -> value）。
+     */
+    Map<String, String> toFields() {
+        Map<String, String> f = new HashMap<>();
+        f.put("kind", kind.name());
+        f.put("id", Long.toString(id));
+        f.put("version", Long.toString(version));
+        if (question != null) f.put("question", question);
+        if (keywords != null) f.put("keywords", keywords);
+        f.put("active", Boolean.toString(active));
+        f.put("retrievalChanged", Boolean.toString(retrievalChanged));
+        f.put("questionChanged", Boolean.toString(questionChanged));
+        return f;
+    }
+
+    /**
+     * @throws IllegalArgumentException 字段缺失或非法
+     */
+    static KnowledgeChange fromFields(Map<?, ?> f) {
+        try {
+            return new KnowledgeChange(
+                    Kind.valueOf(str(f, "kind")),
+                    Long.parseLong(str(f, "id")),
+                    Long.parseLong(str(f, "version")),
+                    str(f, "question"),
+                    str(f, "keywords"),
+                    Boolean.parseBoolean(str(f, "active")),
+                    Boolean.parseBoolean(str(f, "retrievalChanged")),
+                    Boolean.parseBoolean(str(f, "questionChanged")),
+                    true);
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("bad change entry: " + f, e);
+        }
+    }
+
+    private static String str(Map<?, ?> f, String key) {
+        Object v = f.get(key);
+        return v == null ? null : v.toString();
+    }
+}
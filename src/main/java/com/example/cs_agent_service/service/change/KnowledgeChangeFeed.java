@@ -0,0 +1,116 @@
+package com.example.cs_agent_service.service.change;
+
+import com.example.cs_agent_service.config.KnowledgeChangeProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把本节点提交的 {@link KnowledgeChange} 写入变更流，并轮询流里其他节点的事件，
+ * 以 remote=true 重新发布给本地监听者（索引、向量索引）。派生状态按变更条目增量更新，不必全量重扫。
+ * <p>
+ * 同一条目的事件按版本去重：迟到的旧版本（例如另一节点较早的修改）不会覆盖已应用的新状态。
+ */
+@Component
+public class KnowledgeChangeFeed {
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeChangeFeed.class);
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final KnowledgeChangeStream stream;
+    private final ApplicationEventPublisher publisher;
+    private final KnowledgeChangeProperties props;
+
+    // 条目 id -> 已应用的最高版本（只记启动后变更过的条目）
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    private volatile String cursor;
+
+    private final Counter local;
+    private final Counter remote;
+    private final Counter stale;
+
+    public KnowledgeChangeFeed(
+            KnowledgeChangeStream stream,
+            ApplicationEventPublisher publisher,
+            KnowledgeChangeProperties props,
+            MeterRegistry registry
+    ) {
+        this.stream = stream;
+        this.publisher = publisher;
+        this.props = props;
+        this.local = counter(registry, "local");
+        this.remote = counter(registry, "remote");
+        this.stale = counter(registry, "stale");
+    }
+
+    private static Counter counter(MeterRegistry registry, String source) {
+        return Counter.builder("agent.kb.changes")
+                .description("Knowledge base change events by source")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLocalChange(KnowledgeChange change) {
+        if (change.remote()) return;
+        if (change.kind() != KnowledgeChange.Kind.RELOADED) versions.merge(change.id(), change.version(), Math::max);
+        Map<String, String> fields = change.toFields();
+        fields.put("origin", nodeId);
+        stream.append(fields);
+        local.increment();
+    }
+
+    /**
+     * 首次调用只定位到流末尾：启动前的变更已包含在索引的全量构建里。
+     */
+    @Scheduled(fixedDelayString = "${agent.kb-changes.poll-ms:500}")
+    public void poll() {
+        if (cursor == null) {
+            cursor = stream.tail().orElse(null);
+            return;
+        }
+        List<KnowledgeChangeStream.Entry> entries = stream.readAfter(cursor, props.getBatchSize());
+        for (KnowledgeChangeStream.Entry e : entries) {
+            cursor = e.id();
+            if (nodeId.equals(e.fields().get("origin"))) continue;
+            KnowledgeChange change;
+            try {
+                change = KnowledgeChange.fromFields(e.fields());
+            } catch (IllegalArgumentException ex) {
+                log.warn("[kb-change] skip bad entry id={} err={}", e.id(), ex.getMessage());
+                continue;
+            }
+            if (!isNewer(change)) {
+                stale.increment();
+                continue;
+            }
+            remote.increment();
+            try {
+                publisher.publishEvent(change);
+            } catch (Exception ex) {
+                // 单条应用失败不阻塞后续事件，定时全量校验兜底
+                log.warn("[kb-change] apply failed kind={} id={}", change.kind(), change.id(), ex);
+            }
+        }
+    }
+
+    private boolean isNewer(KnowledgeChange change) {
+        if (change.kind() == KnowledgeChange.Kind.RELOADED) return true;
+        boolean[] newer = {false};
+        versions.compute(change.id(), (id, prev) -> {
+            if (prev != null && change.version() <= prev) return prev;
+            newer[0] = true;
+            return change.version();
+        });
+        return newer[0];
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.cs_agent_service.service.change;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 跨节点的知识库变更流：只追加，各节点按游标各自读取。
+ * 生产用 Redis Stream（{@link RedisChangeStream}），单机与测试用进程内实现（{@link InMemoryChangeStream}）。
+ */
+public interface KnowledgeChangeStream {
+
+    /**
+     * 追加一条事件；失败时降级丢弃（各节点的定时全量校验兜底）。
+     */
+    void append(Map<String, String> fields);
+
+    /**
+     * 当前末尾位置，从这里开始读只会读到之后追加的事件；流不可用时为空。
+     */
+    Optional<String> tail();
+
+    /**
+     * 游标之后的至多 count 条事件，按追加顺序。
+     */
+    List<Entry> readAfter(String cursor, int count);
+
+    record Entry(String id, Map<?, ?> fields) {}
+}
@@ -0,0 +1,40 @@
+package com.example.cs_agent_service.service.change;
+
+import com.example.cs_agent_service.config.KnowledgeChangeProperties;
+import com.example.cs_agent_service.service.cache.RedisCacheService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Redis Stream 实现（agent.kb-changes.transport=redis）：XADD MAXLEN ~ 限长，XREAD 非阻塞轮询。
+ * 超出保留长度或 Redis 故障期间丢失的事件由各节点索引的定时全量校验补上。
+ */
+public class RedisChangeStream implements KnowledgeChangeStream {
+
+    private final RedisCacheService redis;
+    private final KnowledgeChangeProperties props;
+
+    public RedisChangeStream(RedisCacheService redis, KnowledgeChangeProperties props) {
+        this.redis = redis;
+        this.props = props;
+    }
+
+    @Override
+    public void append(Map<String, String> fields) {
+        redis.streamAdd(props.getStreamKey(), fields, props.getMaxLen());
+    }
+
+    @Override
+    public Optional<String> tail() {
+        return redis.streamLastId(props.getStreamKey());
+    }
+
+    @Override
+    public List<Entry> readAfter(String cursor, int count) {
+        return redis.streamRead(props.getStreamKey(), cursor, count).stream()
+                .map(r -> new Entry(r.getId().getValue(), r.getValue()))
+                .toList();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.cs_agent_service.service.context;
+
+import com.example.cs_agent_service.service.ai.DashScopeClient.Turn;
+import com.example.cs_agent_service.service.prompt.TokenEstimator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个会话最近的若干轮消息，条数与估算 token 数都有上限，超出时从最旧的开始丢。
+ */
+final class ContextWindow {
+
+    private final int maxMessages;
+    private final int tokenBudget;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private int tokens = 0;
+    // 窗口已包含的最大消息 id，用于判断是否落后于数据库
+    private long lastMessageId;
+
+    ContextWindow(int maxMessages, int tokenBudget, long lastMessageId) {
+        this.maxMessages = maxMessages;
+        this.tokenBudget = tokenBudget;
+        this.lastMessageId = lastMessageId;
+    }
+
+    synchronized void append(Turn turn, long messageId) {
+        Entry e = new Entry(turn, TokenEstimator.estimate(turn.content()));
+        entries.addLast(e);
+        tokens += e.tokens();
+        lastMessageId = Math.max(lastMessageId, messageId);
+        while (!entries.isEmpty() && (entries.size() > maxMessages || tokens > tokenBudget)) {
+            tokens -= entries.removeFirst().tokens();
+        }
+    }
+
+    synchronized List<Turn> turns() {
+        List<Turn> out = new ArrayList<>(entries.size());
+        for (Entry e : entries) out.add(e.turn());
+        return out;
+    }
+
+    synchronized long lastMessageId() {
+        return lastMessageId;
+    }
+
+    synchronized int tokens() {
+        return tokens;
+    }
+
+    private record Entry(Turn turn, int tokens) {}
+}
@@ -0,0 +1,89 @@
+package com.example.cs_agent_service.service.context;
+
+import com.example.cs_agent_service.config.ContextWindowProperties;
+import com.example.cs_agent_service.entity.Message;
+import com.example.cs_agent_service.entity.MessageSender;
+import com.example.cs_agent_service.repo.MessageRepository;
+import com.example.cs_agent_service.service.ConversationClosed;
+import com.example.cs_agent_service.service.ai.DashScopeClient.Turn;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 打开中的会话在内存里保留一个有界的历史窗口，多轮问答时只把窗口放进 prompt，不重读整段记录。
+ * <p>
+ * 每轮先用 (conversation_id, id) 索引取该会话最大消息 id，与窗口记录的比较：
+ * 不一致（其他节点/其他接口写入了消息、或窗口已被淘汰）才从库里重新加载最近几条。
+ * 会话关闭时移除，空闲超时由 Caffeine 回收。
+ */
+@Component
+public class ConversationContextStore {
+
+    private final MessageRepository messageRepo;
+    private final ContextWindowProperties props;
+    private final Cache<Long, ContextWindow> windows;
+
+    public ConversationContextStore(MessageRepository messageRepo, ContextWindowProperties props, MeterRegistry registry) {
+        this.messageRepo = messageRepo;
+        this.props = props;
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, props.getMaxConversations()))
+                .expireAfterAccess(Duration.ofMinutes(Math.max(1, props.getIdleMinutes())))
+                .build();
+        registry.gauge("agent.context.windows", windows, Cache::estimatedSize);
+    }
+
+    /**
+     * @return 按时间顺序的历史消息（不含本轮）
+     */
+    public List<Turn> recent(Long conversationId) {
+        Long lastId = messageRepo.findLastIdByConversationId(conversationId);
+        long dbLast = lastId == null ? 0 : lastId;
+        ContextWindow w = windows.getIfPresent(conversationId);
+        if (w == null || w.lastMessageId() != dbLast) {
+            w = load(conversationId, dbLast);
+            windows.put(conversationId, w);
+        }
+        return w.turns();
+    }
+
+    /**
+     * 本轮消息落库后追加到窗口。
+     */
+    public void append(Long conversationId, List<Message> saved) {
+        ContextWindow w = windows.getIfPresent(conversationId);
+        if (w == null) return;
+        for (Message m : saved) w.append(toTurn(m), m.getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClosed(ConversationClosed event) {
+        evict(event.conversationId());
+    }
+
+    public void evict(Long conversationId) {
+        windows.invalidate(conversationId);
+    }
+
+    private ContextWindow load(Long conversationId, long lastId) {
+        List<Message> newestFirst = messageRepo.findByConversationIdOrderByIdDesc(
+                conversationId, Limit.of(Math.max(1, props.getMaxMessages())));
+        ContextWindow w = new ContextWindow(props.getMaxMessages(), props.getTokenBudget(), lastId);
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            Message m = newestFirst.get(i);
+            w.append(toTurn(m), m.getId());
+        }
+        return w;
+    }
+
+    private static Turn toTurn(Message m) {
+        return m.getSender() == MessageSender.AGENT ? Turn.assistant(m.getContent()) : Turn.user(m.getContent());
+    }
+}
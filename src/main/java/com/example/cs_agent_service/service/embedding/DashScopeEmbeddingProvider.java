@@ -0,0 +1,39 @@
+package com.example.cs_agent_service.service.embedding;
+
+import com.example.cs_agent_service.config.EmbeddingProperties;
+import com.example.cs_agent_service.service.ai.DashScopeClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * agent.embedding.provider=dashscope 时启用：调用 DashScope 向量模型（每次一次网络往返）。
+ */
+@Component
+@ConditionalOnProperty(prefix = "agent.embedding", name = "provider", havingValue = "dashscope")
+public class DashScopeEmbeddingProvider implements EmbeddingProvider {
+
+    private final DashScopeClient client;
+    private final EmbeddingProperties props;
+
+    public DashScopeEmbeddingProvider(DashScopeClient client, EmbeddingProperties props) {
+        this.client = client;
+        this.props = props;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] v = client.embed(props.getModel(), text == null ? "" : text, props.getDimensions());
+        HashingEmbeddingProvider.normalize(v);
+        return v;
+    }
+
+    @Override
+    public int dimensions() {
+        return props.getDimensions();
+    }
+
+    @Override
+    public String id() {
+        return "dashscope:" + props.getModel();
+    }
+}
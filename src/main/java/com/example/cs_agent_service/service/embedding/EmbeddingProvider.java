@@ -0,0 +1,23 @@
+package com.example.cs_agent_service.service.embedding;
+
+/**
+ * 文本向量化。实现需返回 L2 归一化后的向量，余弦相似度即点积。
+ */
+public interface EmbeddingProvider {
+
+    float[] embed(String text);
+
+    int dimensions();
+
+    /**
+     * 实现与模型的标识：持久化的向量只在标识相同时复用，换算法或模型时要改。
+     */
+    String id();
+
+    static double cosine(float[] a, float[] b) {
+        int n = Math.min(a.length, b.length);
+        double dot = 0;
+        for (int i = 0; i < n; i++) dot += a[i] * b[i];
+        return dot;
+    }
+}
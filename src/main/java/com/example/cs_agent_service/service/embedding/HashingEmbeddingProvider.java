@@ -0,0 +1,78 @@
+package com.example.cs_agent_service.service.embedding;
+
+import com.example.cs_agent_service.config.EmbeddingProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 默认实现：字符 unigram/bigram 特征哈希到固定维度（带符号哈希降低碰撞偏差），再做 L2 归一化。
+ * 不依赖网络与模型文件，同一文本在任何节点上得到相同向量。
+ */
+@Component
+@ConditionalOnProperty(prefix = "agent.embedding", name = "provider", havingValue = "local", matchIfMissing = true)
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+
+    private static final float UNIGRAM_WEIGHT = 0.5f;
+    private static final float BIGRAM_WEIGHT = 1.0f;
+
+    private final int dimensions;
+
+    public HashingEmbeddingProvider(EmbeddingProperties props) {
+        this.dimensions = Math.max(16, props.getDimensions());
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] v = new float[dimensions];
+        if (text == null) return v;
+
+        char prev = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                prev = 0;
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            add(v, c, UNIGRAM_WEIGHT);
+            if (prev != 0) add(v, (prev << 16) | c, BIGRAM_WEIGHT);
+            prev = c;
+        }
+        normalize(v);
+        return v;
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String id() {
+        return "local-hash-v1";
+    }
+
+    private void add(float[] v, int feature, float weight) {
+        int h = mix(feature);
+        int idx = (h >>> 1) % dimensions;
+        v[idx] += (h & 1) == 0 ? weight : -weight;
+    }
+
+    // murmur3 fmix32
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    static void normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) norm += x * x;
+        if (norm == 0) return;
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < v.length; i++) v[i] *= inv;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.cs_agent_service.service.importing;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 最小 RFC 4180 解析：逗号分隔，双引号包裹的字段可含逗号、换行，"" 表示一个引号。
+ * 逐条读取，不把整个文件读进内存。
+ */
+final class CsvReader {
+
+    private final Reader in;
+    private int peeked = -2;
+    // 物理行号（字段内换行也计入），只用于解析错误的提示
+    private long line = 1;
+
+    CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return 下一条记录，读完返回 null
+     */
+    List<String> next() throws IOException {
+        int c = read();
+        // 跳过空行
+        while (c == '\r' || c == '\n') c = read();
+        if (c == -1) return null;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (quoted) {
+                if (c == -1) throw new IOException("unterminated quoted field near line " + line);
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                fieldStart = true;
+                c = read();
+                continue;
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') read();
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            fieldStart = false;
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (peeked != -2) {
+            c = peeked;
+            peeked = -2;
+        } else {
+            c = in.read();
+        }
+        if (c == '\n') line++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) peeked = in.read();
+        return peeked;
+    }
+}
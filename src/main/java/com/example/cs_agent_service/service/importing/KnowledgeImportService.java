@@ -0,0 +1,266 @@
+package com.example.cs_agent_service.service.importing;
+
+import com.example.cs_agent_service.dto.CreateKnowledgeBaseRequest;
+import com.example.cs_agent_service.dto.KnowledgeImportReport;
+import com.example.cs_agent_service.dto.KnowledgeImportReport.RowError;
+import com.example.cs_agent_service.service.change.KnowledgeChange;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 知识库批量导入（CSV / NDJSON）：逐行读取、逐行校验，合法行按批 JDBC batch insert。
+ * <p>
+ * 实体用 IDENTITY 主键，Hibernate 对它不做 insert 批处理；这里绕过 JPA 直接批量写，
+ * id 交给数据库生成，导入结束后发一条 RELOADED 变更（各节点整体重建检索索引、bump 知识库代际），而不是逐条 upsert。
+ * 每批单独提交：中途失败时已提交的批次保留，结果里如实报告。
+ */
+@Service
+public class KnowledgeImportService {
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeImportService.class);
+
+    static final int BATCH_SIZE = 500;
+    static final int MAX_REPORTED_ERRORS = 100;
+    private static final int PROGRESS_EVERY_BATCHES = 20;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO knowledge_base (question, answer, keywords, active, create_time) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher events;
+
+    // 按批累加，导入进行中就能在 /actuator/metrics 上看到进度
+    private final Counter rowsRead;
+    private final Counter rowsImported;
+    private final Counter rowsFailed;
+    private final AtomicInteger running = new AtomicInteger();
+
+    public KnowledgeImportService(
+            JdbcTemplate jdbc,
+            Validator validator,
+            ObjectMapper objectMapper,
+            ApplicationEventPublisher events,
+            MeterRegistry registry
+    ) {
+        this.jdbc = jdbc;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.events = events;
+        this.rowsRead = Counter.builder("agent.kb.import.rows").tag("result", "read").register(registry);
+        this.rowsImported = Counter.builder("agent.kb.import.rows").tag("result", "imported").register(registry);
+        this.rowsFailed = Counter.builder("agent.kb.import.rows").tag("result", "failed").register(registry);
+        registry.gauge("agent.kb.import.running", running);
+    }
+
+    /**
+     * 首行为表头，需包含 question、answer 两列，keywords 可选；列顺序不限。
+     */
+    public KnowledgeImportReport importCsv(Reader reader) {
+        running.incrementAndGet();
+        try {
+            return readCsvBody(reader);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private KnowledgeImportReport readCsvBody(Reader reader) {
+        Batch batch = new Batch();
+        try {
+            CsvReader csv = new CsvReader(reader);
+            List<String> header = csv.next();
+            if (header == null) throw badRequest("CSV 为空");
+            int qCol = column(header, "question");
+            int aCol = column(header, "answer");
+            int kCol = column(header, "keywords");
+            if (qCol < 0 || aCol < 0) throw badRequest("CSV 表头必须包含 question 和 answer 列");
+
+            List<String> record;
+            while ((record = readCsv(csv, batch)) != null) {
+                batch.accept(new CreateKnowledgeBaseRequest(
+                        field(record, qCol), field(record, aCol), field(record, kCol)));
+            }
+        } catch (IOException e) {
+            // 格式错误之后的内容无法可靠分行，停止读取，之前的行照常提交
+            batch.reject("CSV 解析失败: " + e.getMessage());
+        }
+        return batch.finish("csv");
+    }
+
+    /**
+     * 每行一个 JSON 对象：{"question": "...", "answer": "...", "keywords": "..."}。
+     */
+    public KnowledgeImportReport importNdjson(Reader reader) {
+        running.incrementAndGet();
+        try {
+            return readNdjsonBody(reader);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private KnowledgeImportReport readNdjsonBody(Reader reader) {
+        Batch batch = new Batch();
+        BufferedReader in = reader instanceof BufferedReader b ? b : new BufferedReader(reader);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                batch.total++;
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    batch.accept(new CreateKnowledgeBaseRequest(
+                            text(node, "question"), text(node, "answer"), text(node, "keywords")));
+                } catch (JsonProcessingException e) {
+                    batch.error(batch.total, "JSON 解析失败: " + e.getOriginalMessage());
+                }
+            }
+        } catch (IOException e) {
+            batch.reject("读取请求体失败: " + e.getMessage());
+        }
+        return batch.finish("ndjson");
+    }
+
+    private static List<String> readCsv(CsvReader csv, Batch batch) throws IOException {
+        List<String> record = csv.next();
+        if (record != null) batch.total++;
+        return record;
+    }
+
+    private static int column(List<String> header, String name) {
+        for (int i = 0; i < header.size(); i++) {
+            // Excel 导出的 UTF-8 CSV 带 BOM
+            String h = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+            if (h.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private static String field(List<String> record, int col) {
+        return col >= 0 && col < record.size() ? record.get(col) : null;
+    }
+
+    private static String text(JsonNode node, String name) {
+        JsonNode v = node.get(name);
+        return v == null || v.isNull() ? null : v.asText();
+    }
+
+    private static ResponseStatusException badRequest(String message) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, message);
+    }
+
+    /**
+     * 一次导入的累计状态；total 由调用方在读到每条数据行时递增，作为行号。
+     */
+    private final class Batch {
+        final long start = System.nanoTime();
+        // 已计入指标的行数
+        long reportedTotal;
+        long reportedImported;
+        long reportedFailed;
+        final List<Object[]> pending = new ArrayList<>(BATCH_SIZE);
+        final List<Long> pendingRows = new ArrayList<>(BATCH_SIZE);
+        final List<RowError> errors = new ArrayList<>();
+        long total;
+        long imported;
+        long failed;
+        int batches;
+
+        void accept(CreateKnowledgeBaseRequest row) {
+            // 与单条创建接口相同的校验规则
+            Set<ConstraintViolation<CreateKnowledgeBaseRequest>> violations = validator.validate(row);
+            if (!violations.isEmpty()) {
+                error(total, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted(Comparator.naturalOrder())
+                        .reduce((a, b) -> a + "; " + b)
+                        .orElse("invalid"));
+                return;
+            }
+            String keywords = row.keywords() == null || row.keywords().isBlank() ? null : row.keywords().trim();
+            pending.add(new Object[]{
+                    row.question().trim(), row.answer().trim(), keywords, true, Timestamp.valueOf(LocalDateTime.now())});
+            pendingRows.add(total);
+            if (pending.size() >= BATCH_SIZE) flush();
+        }
+
+        void error(long row, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(row, message));
+        }
+
+        /**
+         * 请求体无法继续读取：记一条错误（行号为最后读到的行之后）。
+         */
+        void reject(String message) {
+            error(total + 1, message);
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                report();
+                return;
+            }
+            try {
+                jdbc.batchUpdate(INSERT_SQL, pending);
+                imported += pending.size();
+            } catch (Exception e) {
+                log.warn("[import] batch of {} rows failed, first row={}", pending.size(), pendingRows.get(0), e);
+                String message = "写入失败: " + e.getMessage();
+                for (Long row : pendingRows) error(row, message);
+            }
+            pending.clear();
+            pendingRows.clear();
+            report();
+            if (++batches % PROGRESS_EVERY_BATCHES == 0) {
+                log.info("[import] progress rows={} imported={} failed={}", total, imported, failed);
+            }
+        }
+
+        void report() {
+            rowsRead.increment(total - reportedTotal);
+            rowsImported.increment(imported - reportedImported);
+            rowsFailed.increment(failed - reportedFailed);
+            reportedTotal = total;
+            reportedImported = imported;
+            reportedFailed = failed;
+        }
+
+        KnowledgeImportReport finish(String format) {
+            flush();
+            if (imported > 0) {
+                // 派生状态整体刷新一次
+                events.publishEvent(KnowledgeChange.reloaded());
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            log.info("[import] done format={} rows={} imported={} failed={} cost={}ms",
+                    format, total, imported, failed, elapsedMs);
+            return new KnowledgeImportReport(total, imported, failed, elapsedMs, List.copyOf(errors));
+        }
+    }
+}
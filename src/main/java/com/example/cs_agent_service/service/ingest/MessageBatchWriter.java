@@ -0,0 +1,78 @@
+package com.example.cs_agent_service.service.ingest;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 多行 INSERT 写消息：一条语句写一批，id 仍由数据库自增生成（行顺序即 VALUES 顺序）。
+ * 走 Hibernate 原生查询而不是 JdbcTemplate，Instant 的绑定方式与实体映射一致。
+ * 标为 @Repository 以便异常被翻译成 DataAccessException（区分坏数据与连接故障）。
+ */
+@Repository
+public class MessageBatchWriter {
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO messages (conversation_id, sender, content, created_at) VALUES ";
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * @param maxRowsPerStatement 超过时拆成多条语句，同一事务内执行
+     * @return 写入行数
+     */
+    @Transactional
+    public int insert(List<PendingMessage> rows, int maxRowsPerStatement) {
+        int step = Math.max(1, maxRowsPerStatement);
+        int written = 0;
+        for (int from = 0; from < rows.size(); from += step) {
+            List<PendingMessage> chunk = rows.subList(from, Math.min(rows.size(), from + step));
+            StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+            for (int i = 0; i < chunk.size(); i++) {
+                int p = i * 4;
+                if (i > 0) sql.append(',');
+                sql.append("(?").append(p + 1).append(",?").append(p + 2)
+                        .append(",?").append(p + 3).append(",?").append(p + 4).append(')');
+            }
+            Query q = em.createNativeQuery(sql.toString());
+            for (int i = 0; i < chunk.size(); i++) {
+                PendingMessage m = chunk.get(i);
+                int p = i * 4;
+                q.setParameter(p + 1, m.conversationId());
+                q.setParameter(p + 2, m.sender().name());
+                q.setParameter(p + 3, m.content());
+                q.setParameter(p + 4, m.createdAt());
+            }
+            written += q.executeUpdate();
+        }
+        return written;
+    }
+
+    /**
+     * 缓冲写入用：入队时校验过的会话在落库前可能已被关闭，同一事务内再查一次状态，
+     * 只写仍为 OPEN 的会话的行（与同步写入一样，不锁会话行）。
+     *
+     * @return 写入行数；与 rows.size() 的差即因会话已关闭而丢弃的行数
+     */
+    @Transactional
+    public int insertOpen(List<PendingMessage> rows, int maxRowsPerStatement) {
+        Set<Long> ids = new HashSet<>();
+        for (PendingMessage m : rows) ids.add(m.conversationId());
+        List<?> found = em.createNativeQuery("SELECT id FROM conversations WHERE status = 'OPEN' AND id IN (?1)")
+                .setParameter(1, ids)
+                .getResultList();
+        Set<Long> open = new HashSet<>(found.size() * 2);
+        for (Object id : found) open.add(((Number) id).longValue());
+        List<PendingMessage> kept = open.size() == ids.size()
+                ? rows
+                : rows.stream().filter(m -> open.contains(m.conversationId())).toList();
+        return kept.isEmpty() ? 0 : insert(kept, maxRowsPerStatement);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.cs_agent_service.service.ingest;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.MessageBufferProperties;
+import com.example.cs_agent_service.dto.MessageBufferStatus;
+import com.example.cs_agent_service.service.cache.RedisCacheService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * 消息 write-behind 缓冲：接收时只做内存入队并分配递增序号，后台定时把多个会话的消息
+ * 合并成多行 INSERT。队列有界，满了直接拒绝（背压），不阻塞请求线程。
+ * <p>
+ * 按 FIFO 顺序落库，所以“序号 <= durableSequence 的消息都已处理”成立。
+ * 一批写失败时原样保留、下次重试（后续消息排队等待）；连续失败达到上限后逐行写入，
+ * 违反约束的行丢弃并计数，避免一条坏数据卡死整个队列；连接类故障则继续保留重试。
+ * 落库时再校验一次会话状态，入队后才被关闭的会话的消息丢弃并计入 dropped。
+ * 进程崩溃会丢失尚未落库的消息，这正是 ACCEPTED 与 durable 的区别。
+ * <p>
+ * 序号只在本进程内递增，回执带上 node（进程实例 id）。每次 flush 后把进度写到 Redis，
+ * 请求被负载均衡到其他节点时也能按 node 查到；重启后旧 node 不再上报，查询不到即视为未知。
+ * <p>
+ * 消息 id 在落库时才由数据库分配，会晚于其间同步写入的消息；按 id 排序的消息列表和上下文窗口
+ * 因此只对“一个会话只用一种写入方式”成立（缓冲写入适合 IM 消息同步这类不经过问答链路的会话）。
+ */
+@Component
+public class MessageWriteBuffer {
+    private static final Logger log = LoggerFactory.getLogger(MessageWriteBuffer.class);
+
+    private final MessageBatchWriter writer;
+    private final MessageBufferProperties props;
+    private final RedisCacheService redis;
+    private final CacheProperties cacheProps;
+    private final String node = UUID.randomUUID().toString();
+
+    // 入队与出队都在 this 上同步，临界区只有内存操作
+    private final ArrayDeque<Sequenced> queue = new ArrayDeque<>();
+    private long acceptedSequence = 0;
+    private volatile long durableSequence = 0;
+    private volatile long dropped = 0;
+
+    // 只在 flushLock 内访问
+    private final Object flushLock = new Object();
+    private List<Sequenced> retrying = List.of();
+    private int failures = 0;
+    private MessageBufferStatus published;
+    private long publishedAtMs;
+
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter written;
+    private final Counter droppedCounter;
+    private final Counter closedCounter;
+
+    public MessageWriteBuffer(
+            MessageBatchWriter writer,
+            MessageBufferProperties props,
+            RedisCacheService redis,
+            CacheProperties cacheProps,
+            MeterRegistry registry
+    ) {
+        this.writer = writer;
+        this.props = props;
+        this.redis = redis;
+        this.cacheProps = cacheProps;
+        this.accepted = Counter.builder("agent.messages.buffer").tag("result", "accepted").register(registry);
+        this.rejected = Counter.builder("agent.messages.buffer").tag("result", "rejected").register(registry);
+        this.written = Counter.builder("agent.messages.buffer").tag("result", "written").register(registry);
+        this.droppedCounter = Counter.builder("agent.messages.buffer").tag("result", "dropped").register(registry);
+        this.closedCounter = Counter.builder("agent.messages.buffer").tag("result", "closed").register(registry);
+        registry.gauge("agent.messages.buffer.queued", this, MessageWriteBuffer::queued);
+    }
+
+    public String node() {
+        return node;
+    }
+
+    /**
+     * @return 分配的序号（在 {@link #node()} 内有效）；队列已满返回 empty
+     */
+    public OptionalLong offer(PendingMessage message) {
+        synchronized (this) {
+            if (queue.size() >= props.getCapacity()) {
+                rejected.increment();
+                return OptionalLong.empty();
+            }
+            long seq = ++acceptedSequence;
+            queue.add(new Sequenced(seq, message));
+            accepted.increment();
+            return OptionalLong.of(seq);
+        }
+    }
+
+    public MessageBufferStatus status() {
+        synchronized (this) {
+            return new MessageBufferStatus(node, acceptedSequence, durableSequence, queue.size(), props.getCapacity(), dropped);
+        }
+    }
+
+    /**
+     * @param node 回执中的 node，null 表示本节点
+     * @return 其他节点的进度取自 Redis；节点未知（已重启、已下线或未开启 agent.cache）时返回 empty
+     */
+    public Optional<MessageBufferStatus> status(String node) {
+        if (node == null || node.equals(this.node)) return Optional.of(status());
+        if (!cacheProps.isEnabled()) return Optional.empty();
+        return redis.get(progressKey(node)).flatMap(v -> decode(node, v));
+    }
+
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * 一直写到队列清空（或某批失败），吞吐不受定时间隔限制。
+     */
+    @Scheduled(fixedDelayString = "${agent.message-buffer.flush-interval-ms:200}")
+    public void flush() {
+        synchronized (flushLock) {
+            while (true) {
+                List<Sequenced> batch = retrying.isEmpty() ? drain() : retrying;
+                if (batch.isEmpty() || !write(batch)) break;
+            }
+            publishProgress();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        if (!retrying.isEmpty() || queued() > 0) {
+            log.warn("[ingest] shutdown with {} messages not persisted", retrying.size() + queued());
+        }
+    }
+
+    private List<Sequenced> drain() {
+        synchronized (this) {
+            int n = Math.min(queue.size(), Math.max(1, props.getMaxBatch()));
+            List<Sequenced> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) batch.add(queue.poll());
+            return batch;
+        }
+    }
+
+    private boolean write(List<Sequenced> batch) {
+        try {
+            int n = writer.insertOpen(rows(batch), props.getMaxBatch());
+            written.increment(n);
+            closed(batch.size() - n);
+            done(batch);
+            return true;
+        } catch (Exception e) {
+            failures++;
+            if (failures < props.getMaxRetries()) {
+                log.warn("[ingest] batch of {} failed ({}/{}), retry later. err={}",
+                        batch.size(), failures, props.getMaxRetries(), e.getMessage());
+                retrying = batch;
+                return false;
+            }
+            log.warn("[ingest] batch of {} failed {} times, writing row by row", batch.size(), failures);
+            return writeOneByOne(batch);
+        }
+    }
+
+    private boolean writeOneByOne(List<Sequenced> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Sequenced s = batch.get(i);
+            try {
+                if (writer.insertOpen(List.of(s.message()), 1) == 1) {
+                    written.increment();
+                } else {
+                    closed(1);
+                }
+            } catch (DataIntegrityViolationException e) {
+                dropped++;
+                droppedCounter.increment();
+                log.error("[ingest] drop message seq={} conversation={} err={}",
+                        s.sequence(), s.message().conversationId(), e.getMessage());
+            } catch (Exception e) {
+                // 不是数据本身的问题（如数据库不可用）：剩余的行留到下次
+                log.warn("[ingest] row write failed, retry later. err={}", e.getMessage());
+                if (i > 0) durableSequence = batch.get(i - 1).sequence();
+                retrying = List.copyOf(batch.subList(i, batch.size()));
+                return false;
+            }
+        }
+        done(batch);
+        return true;
+    }
+
+    private void closed(int n) {
+        if (n <= 0) return;
+        dropped += n;
+        closedCounter.increment(n);
+        log.info("[ingest] discard {} messages of closed conversations", n);
+    }
+
+    /**
+     * 进度只增不减，其他节点读到稍旧的值只会低估 durableSequence；没有变化时按 TTL 的一半续期。
+     */
+    private void publishProgress() {
+        if (!cacheProps.isEnabled()) return;
+        MessageBufferStatus now = status();
+        long nowMs = System.currentTimeMillis();
+        if (now.equals(published) && nowMs - publishedAtMs < props.getProgressTtlSeconds() * 500) return;
+        redis.set(progressKey(node), encode(now), props.getProgressTtlSeconds());
+        published = now;
+        publishedAtMs = nowMs;
+    }
+
+    private String progressKey(String node) {
+        return props.getProgressKeyPrefix() + ":" + node;
+    }
+
+    private static String encode(MessageBufferStatus s) {
+        return s.acceptedSequence() + "," + s.durableSequence() + "," + s.queued() + "," + s.capacity() + "," + s.dropped();
+    }
+
+    private static Optional<MessageBufferStatus> decode(String node, String value) {
+        String[] f = value.split(",");
+        if (f.length != 5) return Optional.empty();
+        try {
+            return Optional.of(new MessageBufferStatus(node, Long.parseLong(f[0]), Long.parseLong(f[1]),
+                    Integer.parseInt(f[2]), Integer.parseInt(f[3]), Long.parseLong(f[4])));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void done(List<Sequenced> batch) {
+        retrying = List.of();
+        failures = 0;
+        durableSequence = batch.get(batch.size() - 1).sequence();
+    }
+
+    private static List<PendingMessage> rows(List<Sequenced> batch) {
+        List<PendingMessage> rows = new ArrayList<>(batch.size());
+        for (Sequenced s : batch) rows.add(s.message());
+        return rows;
+    }
+
+    private record Sequenced(long sequence, PendingMessage message) {}
+}
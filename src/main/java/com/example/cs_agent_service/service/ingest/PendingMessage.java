@@ -0,0 +1,11 @@
+package com.example.cs_agent_service.service.ingest;
+
+import com.example.cs_agent_service.entity.MessageSender;
+
+import java.time.Instant;
+
+/**
+ * 待写入的消息；createdAt 在接收时确定，而不是落库时。
+ */
+public record PendingMessage(long conversationId, MessageSender sender, String content, Instant createdAt) {
+}
@@ -0,0 +1,100 @@
+package com.example.cs_agent_service.service.prompt;
+
+import com.example.cs_agent_service.entity.KnowledgeBase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对检索候选做 BM25 打分。词项：中文等非 ASCII 文字取字符 bigram（单字片段取单字），英文/数字取整词（小写）。
+ * idf 与平均文档长度取自候选集本身：候选只有几条，不依赖全局统计，索引与 LIKE 两条检索路径都适用。
+ * 文档 = 问题 + 关键词（计两次，相当于字段加权）+ 答案。
+ */
+public final class Bm25 {
+
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+
+    private Bm25() {
+    }
+
+    /**
+     * @return 与 docs 一一对应的得分，没有任何重合词项为 0
+     */
+    public static double[] score(String query, List<KnowledgeBase> docs) {
+        int n = docs.size();
+        double[] scores = new double[n];
+        Set<String> queryTerms = new LinkedHashSet<>(terms(query));
+        if (queryTerms.isEmpty() || n == 0) return scores;
+
+        List<Map<String, Integer>> tfs = new ArrayList<>(n);
+        int[] lengths = new int[n];
+        long totalLength = 0;
+        for (int i = 0; i < n; i++) {
+            KnowledgeBase kb = docs.get(i);
+            List<String> head = terms(join(kb.getQuestion(), kb.getKeywords()));
+            List<String> body = terms(kb.getAnswer());
+            Map<String, Integer> tf = new HashMap<>();
+            for (String t : head) tf.merge(t, 2, Integer::sum);
+            for (String t : body) tf.merge(t, 1, Integer::sum);
+            tfs.add(tf);
+            lengths[i] = head.size() * 2 + body.size();
+            totalLength += lengths[i];
+        }
+        double avgLength = Math.max(1.0, (double) totalLength / n);
+
+        for (String term : queryTerms) {
+            int df = 0;
+            for (Map<String, Integer> tf : tfs) if (tf.containsKey(term)) df++;
+            if (df == 0) continue;
+            double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            for (int i = 0; i < n; i++) {
+                Integer f = tfs.get(i).get(term);
+                if (f == null) continue;
+                double norm = K1 * (1 - B + B * lengths[i] / avgLength);
+                scores[i] += idf * f * (K1 + 1) / (f + norm);
+            }
+        }
+        return scores;
+    }
+
+    static List<String> terms(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null || text.isEmpty()) return out;
+        StringBuilder run = new StringBuilder();
+        boolean asciiRun = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                flush(run, asciiRun, out);
+                continue;
+            }
+            boolean ascii = c < 128;
+            if (run.length() > 0 && ascii != asciiRun) flush(run, asciiRun, out);
+            asciiRun = ascii;
+            run.append(Character.toLowerCase(c));
+        }
+        flush(run, asciiRun, out);
+        return out;
+    }
+
+    private static void flush(StringBuilder run, boolean ascii, List<String> out) {
+        int len = run.length();
+        if (len == 0) return;
+        if (ascii || len == 1) {
+            out.add(run.toString());
+        } else {
+            for (int i = 0; i + 1 < len; i++) out.add(run.substring(i, i + 2));
+        }
+        run.setLength(0);
+    }
+
+    private static String join(String question, String keywords) {
+        if (keywords == null || keywords.isBlank()) return question;
+        return (question == null ? "" : question) + " " + keywords;
+    }
+}
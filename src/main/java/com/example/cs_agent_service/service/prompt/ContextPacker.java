@@ -0,0 +1,105 @@
+package com.example.cs_agent_service.service.prompt;
+
+import com.example.cs_agent_service.config.PromptProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.service.KnowledgeBaseService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 组装 RAG prompt：检索命中按 {@link Bm25} 得分从高到低填入“已知信息”，总量不超过 token 预算。
+ * 放不下的条目截断（剩余预算足够时）或丢弃；得分远低于最高分的条目直接丢弃。最高分条目始终保留。
+ */
+@Component
+public class ContextPacker {
+    private static final Logger log = LoggerFactory.getLogger(ContextPacker.class);
+
+    private static final String ELLIPSIS = "…";
+
+    private final PromptProperties props;
+    private final DistributionSummary contextTokens;
+    private final Counter included;
+    private final Counter truncated;
+    private final Counter dropped;
+
+    public ContextPacker(PromptProperties props, MeterRegistry registry) {
+        this.props = props;
+        this.contextTokens = DistributionSummary.builder("agent.prompt.context.tokens")
+                .description("Estimated tokens of knowledge base context put into the prompt")
+                .register(registry);
+        this.included = Counter.builder("agent.prompt.hits").tag("result", "included").register(registry);
+        this.truncated = Counter.builder("agent.prompt.hits").tag("result", "truncated").register(registry);
+        this.dropped = Counter.builder("agent.prompt.hits").tag("result", "dropped").register(registry);
+    }
+
+    public String build(String q, List<KnowledgeBase> hits) {
+        return pack(q, hits).prompt();
+    }
+
+    public Packed pack(String q, List<KnowledgeBase> hits) {
+        String normalized = KnowledgeBaseService.normalizeQuestion(q);
+        double[] scores = Bm25.score(normalized.isEmpty() ? q : normalized, hits);
+        List<Integer> order = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) order.add(i);
+        // 稳定排序：同分（包括都为 0）保持检索顺序
+        order.sort(Comparator.comparingDouble(i -> -scores[i]));
+
+        double minScore = order.isEmpty() ? 0 : scores[order.get(0)] * props.getMinScoreRatio();
+        int budget = props.getContextTokenBudget();
+        int used = 0;
+        int full = 0;
+        int cut = 0;
+        int skipped = 0;
+        StringBuilder known = new StringBuilder("已知信息：\n");
+        for (int i : order) {
+            int n = full + cut;
+            if (n > 0 && scores[i] < minScore) {
+                skipped++;
+                continue;
+            }
+            String label = "[" + (n + 1) + "] ";
+            String ans = hits.get(i).getAnswer() == null ? "" : hits.get(i).getAnswer();
+            int cost = TokenEstimator.estimate(label) + TokenEstimator.estimate(ans);
+            if (used + cost <= budget) {
+                known.append(label).append(ans).append("\n");
+                used += cost;
+                full++;
+                continue;
+            }
+            int room = budget - used - TokenEstimator.estimate(label) - TokenEstimator.estimate(ELLIPSIS);
+            if (n == 0) room = Math.max(room, props.getMinTruncatedTokens());
+            if (room < props.getMinTruncatedTokens()) {
+                skipped++;
+                continue;
+            }
+            String part = TokenEstimator.truncate(ans, room) + ELLIPSIS;
+            known.append(label).append(part).append("\n");
+            used += TokenEstimator.estimate(label) + TokenEstimator.estimate(part);
+            cut++;
+        }
+        known.append("用户问题：").append(q);
+
+        contextTokens.record(used);
+        included.increment(full);
+        truncated.increment(cut);
+        dropped.increment(skipped);
+        if (cut > 0 || skipped > 0) {
+            log.debug("[prompt] hits={} included={} truncated={} dropped={} tokens={}",
+                    hits.size(), full, cut, skipped, used);
+        }
+        return new Packed(known.toString(), used, full, cut, skipped);
+    }
+
+    /**
+     * @param tokens 已知信息部分的估算 token 数
+     */
+    public record Packed(String prompt, int tokens, int included, int truncated, int dropped) {}
+}
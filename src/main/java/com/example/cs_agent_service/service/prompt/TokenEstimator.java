@@ -0,0 +1,56 @@
+package com.example.cs_agent_service.service.prompt;
+
+/**
+ * 不依赖分词器的 token 数估算，用于给 prompt 各部分做预算（宁可略微高估）。
+ * 经验值：汉字约 1 token/字；连续的英文字母/数字约 4 字符 1 token；其他符号各 1 token；空白不计。
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int tokens = 0;
+        int asciiRun = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                asciiRun++;
+                continue;
+            }
+            tokens += (asciiRun + 3) / 4;
+            asciiRun = 0;
+            if (!Character.isWhitespace(c)) tokens++;
+        }
+        return tokens + (asciiRun + 3) / 4;
+    }
+
+    /**
+     * 按与 {@link #estimate} 相同的规则截取不超过 maxTokens 的最长前缀。
+     */
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || maxTokens <= 0) return "";
+        int tokens = 0;
+        int asciiRun = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                // 每 4 个连续字母/数字的第一个计 1 token
+                next = asciiRun % 4 == 0 ? tokens + 1 : tokens;
+                asciiRun++;
+            } else {
+                asciiRun = 0;
+                next = Character.isWhitespace(c) ? tokens : tokens + 1;
+            }
+            if (next > maxTokens) {
+                // 不切断代理对
+                if (i > 0 && Character.isHighSurrogate(text.charAt(i - 1))) i--;
+                return text.substring(0, i);
+            }
+            tokens = next;
+        }
+        return text;
+    }
+}
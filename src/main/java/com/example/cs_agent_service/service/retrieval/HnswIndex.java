@@ -0,0 +1,243 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * HNSW 近似最近邻图（分层可导航小世界图）。向量须已 L2 归一化，相似度即点积。
+ * <p>
+ * 非线程安全，由 {@link VectorIndex} 加锁：检索持读锁，增删持写锁。
+ * 删除是软删除：节点仍参与图上导航，只是不再出现在结果里；全量重建时清除。
+ */
+final class HnswIndex {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+
+    private float[][] vectors = new float[16][];
+    private long[] ids = new long[16];
+    // links[node][level] = {count, n1, n2, ...}
+    private int[][][] links = new int[16][][];
+    private final BitSet deleted = new BitSet();
+    private final Map<Long, Integer> nodeOf = new HashMap<>();
+    private int size = 0;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int m, int efConstruction, long seed) {
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.random = new Random(seed);
+    }
+
+    int size() {
+        return nodeOf.size();
+    }
+
+    void add(long id, float[] vector) {
+        remove(id);
+        int node = size++;
+        ensureCapacity(size);
+        int level = randomLevel();
+        vectors[node] = vector;
+        ids[node] = id;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) links[node][l] = new int[1 + capacity(l)];
+        nodeOf.put(id, node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        int ep = entryPoint;
+        for (int l = maxLevel; l > level; l--) ep = greedy(vector, ep, l);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Scored> found = searchLayer(vector, ep, efConstruction, l);
+            int[] selected = selectNeighbors(vector, found, capacity(l));
+            int[] own = links[node][l];
+            own[0] = selected.length;
+            System.arraycopy(selected, 0, own, 1, selected.length);
+            for (int nb : selected) link(nb, node, l);
+            ep = found.get(0).node();
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    void remove(long id) {
+        Integer node = nodeOf.remove(id);
+        if (node != null) deleted.set(node);
+    }
+
+    /**
+     * @param ef 检索宽度，越大召回越高、越慢（至少取 k）
+     * @return 相似度降序的至多 k 个结果
+     */
+    List<Hit> search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || k <= 0) return List.of();
+        int ep = entryPoint;
+        for (int l = maxLevel; l > 0; l--) ep = greedy(query, ep, l);
+        List<Scored> found = searchLayer(query, ep, Math.max(ef, k), 0);
+        List<Hit> out = new ArrayList<>(k);
+        for (Scored s : found) {
+            if (deleted.get(s.node())) continue;
+            out.add(new Hit(ids[s.node()], s.sim()));
+            if (out.size() == k) break;
+        }
+        return out;
+    }
+
+    private int greedy(float[] q, int ep, int level) {
+        int best = ep;
+        double bestSim = sim(q, vectors[ep]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] nbs = links[best][level];
+            for (int i = 1; i <= nbs[0]; i++) {
+                double s = sim(q, vectors[nbs[i]]);
+                if (s > bestSim) {
+                    bestSim = s;
+                    best = nbs[i];
+                    changed = true;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return 相似度降序的至多 ef 个节点
+     */
+    private List<Scored> searchLayer(float[] q, int ep, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(Comparator.comparingDouble(Scored::sim).reversed());
+        PriorityQueue<Scored> results = new PriorityQueue<>(Comparator.comparingDouble(Scored::sim));
+        Scored start = new Scored(ep, sim(q, vectors[ep]));
+        visited.set(ep);
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+            Scored c = candidates.poll();
+            if (results.size() >= ef && c.sim() < results.peek().sim()) break;
+            int[] nbs = links[c.node()][level];
+            for (int i = 1; i <= nbs[0]; i++) {
+                int nb = nbs[i];
+                if (visited.get(nb)) continue;
+                visited.set(nb);
+                double s = sim(q, vectors[nb]);
+                if (results.size() < ef || s > results.peek().sim()) {
+                    Scored scored = new Scored(nb, s);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) results.poll();
+                }
+            }
+        }
+        List<Scored> out = new ArrayList<>(results);
+        out.sort(Comparator.comparingDouble(Scored::sim).reversed());
+        return out;
+    }
+
+    /**
+     * 启发式选邻居：候选比已选中的任何邻居都更接近 base 才入选，保证邻居分散在不同方向；
+     * 不足 max 个时用剩余最近的候选补齐。
+     */
+    private int[] selectNeighbors(float[] base, List<Scored> candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.size())];
+        int n = 0;
+        boolean[] taken = new boolean[candidates.size()];
+        for (int i = 0; i < candidates.size() && n < selected.length; i++) {
+            Scored c = candidates.get(i);
+            boolean diverse = true;
+            for (int j = 0; j < n; j++) {
+                if (sim(vectors[c.node()], vectors[selected[j]]) > c.sim()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[n++] = c.node();
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < candidates.size() && n < selected.length; i++) {
+            if (!taken[i]) selected[n++] = candidates.get(i).node();
+        }
+        return selected;
+    }
+
+    private void link(int from, int to, int level) {
+        int[] nbs = links[from][level];
+        int cap = capacity(level);
+        if (nbs[0] < cap) {
+            nbs[++nbs[0]] = to;
+            return;
+        }
+        // 邻居已满：新节点比最远的邻居更近时替换它（不再跑启发式，插入代价与图规模无关）
+        float[] base = vectors[from];
+        int weakest = 1;
+        double weakestSim = Double.MAX_VALUE;
+        for (int i = 1; i <= nbs[0]; i++) {
+            double s = sim(base, vectors[nbs[i]]);
+            if (s < weakestSim) {
+                weakestSim = s;
+                weakest = i;
+            }
+        }
+        if (sim(base, vectors[to]) > weakestSim) nbs[weakest] = to;
+    }
+
+    private int capacity(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= vectors.length) return;
+        int cap = Math.max(n, vectors.length * 2);
+        vectors = Arrays.copyOf(vectors, cap);
+        ids = Arrays.copyOf(ids, cap);
+        links = Arrays.copyOf(links, cap);
+    }
+
+    /**
+     * 点积，四路累加打破浮点加法的依赖链（JIT 不会为浮点归约自动向量化）。
+     */
+    static double sim(float[] a, float[] b) {
+        int n = Math.min(a.length, b.length);
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < n; i++) s0 += a[i] * b[i];
+        return s0 + s1 + s2 + s3;
+    }
+
+    private record Scored(int node, double sim) {}
+
+    record Hit(long id, double similarity) {}
+}
@@ -0,0 +1,341 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 倒排索引的只读段：文档 id 表、n-gram 字典 + 倒排表、关键词字典 + 倒排表，排在一块连续内存里。
+ * 可以直接 mmap 磁盘快照（数据在页缓存里，不占堆），没有快照路径时放在堆外 buffer，检索代码是同一套。
+ * 只用绝对位置读取，多线程并发读安全。
+ * <pre>
+ * header   magic "KBIX" | version | stamp.activeCount | stamp.lastModified | docs | ids 偏移 | grams 偏移 | keywords 偏移 | 总长度
+ * ids      long[docs]，升序，下标即文档序号
+ * dict     terms | termOffsets int[terms+1] | postingOffsets int[terms+1] | postings int[]（文档序号，升序）| UTF-8 词
+ * </pre>
+ * 字典按 UTF-8 字节序排列，查词二分。
+ * <p>
+ * 被替换下来的段由 {@link #release()} 立即解除映射（释放页缓存映射与 Windows 上的文件锁），不等 GC；
+ * 所以一个节点同时最多映射新旧两个快照（新段写好、旧段换下之前）。
+ */
+final class IndexSegment {
+
+    private static final int MAGIC = 0x4B424958;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 48;
+
+    static final IndexSegment EMPTY = new Builder(Stamp.NONE, Map.of(), Map.of()).toDirect();
+
+    // sun.misc.Unsafe#invokeCleaner（jdk.unsupported 模块）：Java 17 没有公开的 unmap API，拿不到时退回等 GC
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final ByteBuffer buf;
+    private final Stamp stamp;
+    private final int docs;
+    private final int idsOff;
+    private final Dict grams;
+    private final Dict keywords;
+    private boolean released;
+
+    private IndexSegment(ByteBuffer buf) throws IOException {
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) throw new IOException("not an index snapshot");
+        if (buf.getInt(4) != VERSION) throw new IOException("unsupported snapshot version " + buf.getInt(4));
+        if (buf.getInt(40) != buf.capacity()) throw new IOException("truncated snapshot");
+        this.buf = buf;
+        this.stamp = new Stamp(buf.getLong(8), buf.getLong(16));
+        this.docs = buf.getInt(24);
+        this.idsOff = buf.getInt(28);
+        this.grams = new Dict(buf.getInt(32));
+        this.keywords = new Dict(buf.getInt(36));
+    }
+
+    private static IndexSegment wrap(ByteBuffer buf) {
+        try {
+            return new IndexSegment(buf);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 只读映射快照文件；格式或长度不对时抛 IOException。
+     */
+    static IndexSegment open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new IndexSegment(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /**
+     * 立即解除映射 / 释放堆外内存。之后再读会让 JVM 崩溃，调用方必须保证没有任何读者还持有本段：
+     * {@link KnowledgeIndex} 的读取都在读锁内，写锁内换下旧段后才调用。
+     */
+    synchronized void release() {
+        if (this == EMPTY || released) return;
+        released = true;
+        if (INVOKE_CLEANER == null || !buf.isDirect()) return;
+        try {
+            INVOKE_CLEANER.invokeExact(buf);
+        } catch (Throwable e) {
+            // 释放不了就交给 GC
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    Stamp stamp() { return stamp; }
+
+    int docs() { return docs; }
+
+    int gramCount() { return grams.terms; }
+
+    int keywordCount() { return keywords.terms; }
+
+    long sizeBytes() { return buf.capacity(); }
+
+    long id(int ord) {
+        return buf.getLong(idsOff + 8 * ord);
+    }
+
+    /**
+     * @return 文档序号，不在本段时返回 -1
+     */
+    int ordinal(long id) {
+        int lo = 0, hi = docs - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = id(mid);
+            if (v < id) lo = mid + 1;
+            else if (v > id) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    Dict grams() { return grams; }
+
+    Dict keywords() { return keywords; }
+
+    /**
+     * 一个词典区：词 -> 倒排表。
+     */
+    final class Dict {
+        final int terms;
+        private final int termOffs;
+        private final int postingOffs;
+        private final int postings;
+        private final int bytes;
+
+        private Dict(int off) {
+            this.terms = buf.getInt(off);
+            this.termOffs = off + 4;
+            this.postingOffs = termOffs + 4 * (terms + 1);
+            this.postings = postingOffs + 4 * (terms + 1);
+            this.bytes = postings + 4 * buf.getInt(postingOffs + 4 * terms);
+        }
+
+        /**
+         * @return 词下标，不存在时返回 -1
+         */
+        int find(String term) {
+            byte[] key = term.getBytes(StandardCharsets.UTF_8);
+            int lo = 0, hi = terms - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compare(mid, key);
+                if (c < 0) lo = mid + 1;
+                else if (c > 0) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        String term(int t) {
+            int from = bytes + buf.getInt(termOffs + 4 * t);
+            int to = bytes + buf.getInt(termOffs + 4 * (t + 1));
+            byte[] out = new byte[to - from];
+            buf.get(from, out);
+            return new String(out, StandardCharsets.UTF_8);
+        }
+
+        int df(int t) {
+            return buf.getInt(postingOffs + 4 * (t + 1)) - buf.getInt(postingOffs + 4 * t);
+        }
+
+        /**
+         * 第 t 个词倒排表里的第 i 个文档序号。
+         */
+        int doc(int t, int i) {
+            return buf.getInt(postings + 4 * (buf.getInt(postingOffs + 4 * t) + i));
+        }
+
+        private int compare(int t, byte[] key) {
+            int from = bytes + buf.getInt(termOffs + 4 * t);
+            int len = bytes + buf.getInt(termOffs + 4 * (t + 1)) - from;
+            int n = Math.min(len, key.length);
+            for (int i = 0; i < n; i++) {
+                int c = Byte.toUnsignedInt(buf.get(from + i)) - Byte.toUnsignedInt(key[i]);
+                if (c != 0) return c;
+            }
+            return len - key.length;
+        }
+    }
+
+    /**
+     * 建段时知识库的状态：active 条目数与最后修改时间。两者都没变才认为快照仍然有效。
+     */
+    record Stamp(long activeCount, long lastModified) {
+        static final Stamp NONE = new Stamp(-1, -1);
+    }
+
+    /**
+     * 由堆内倒排表生成段：先算好布局和总长度，再一次写入目标 buffer。
+     */
+    static final class Builder {
+        private final Stamp stamp;
+        private final long[] ids;
+        private final DictLayout grams;
+        private final DictLayout keywords;
+        private final int size;
+
+        Builder(Stamp stamp, Map<Long, Set<String>> docGrams, Map<Long, Set<String>> docKeywords) {
+            this.stamp = stamp;
+            this.ids = docGrams.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            this.grams = new DictLayout(ids, docGrams);
+            this.keywords = new DictLayout(ids, docKeywords);
+            this.size = HEADER_BYTES + 8 * ids.length + grams.size + keywords.size;
+        }
+
+        IndexSegment toDirect() {
+            return wrap(write(ByteBuffer.allocateDirect(size)));
+        }
+
+        /**
+         * 写同目录下的独占临时文件后原子改名，再映射新文件；已映射的旧快照不受影响。
+         * 临时文件每次新建，别的写者（其他进程共用同一路径时）不会截断正在写的映射。
+         */
+        IndexSegment writeTo(Path path) throws IOException {
+            Path target = path.toAbsolutePath();
+            Path dir = target.getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, target.getFileName() + ".", ".tmp");
+            try {
+                try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer out = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    write(out);
+                    out.force();
+                }
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return open(target);
+        }
+
+        private ByteBuffer write(ByteBuffer out) {
+            int gramsOff = HEADER_BYTES + 8 * ids.length;
+            int keywordsOff = gramsOff + grams.size;
+            out.putInt(0, MAGIC).putInt(4, VERSION)
+                    .putLong(8, stamp.activeCount()).putLong(16, stamp.lastModified())
+                    .putInt(24, ids.length).putInt(28, HEADER_BYTES)
+                    .putInt(32, gramsOff).putInt(36, keywordsOff).putInt(40, out.capacity());
+            for (int i = 0; i < ids.length; i++) out.putLong(HEADER_BYTES + 8 * i, ids[i]);
+            grams.write(out, gramsOff);
+            keywords.write(out, keywordsOff);
+            return out;
+        }
+    }
+
+    private static final class DictLayout {
+        private final byte[][] terms;
+        private final int[][] postings;
+        private final int postingCount;
+        final int size;
+
+        /**
+         * 按文档序号顺序填倒排表，天然升序；词按 UTF-8 字节序排好。
+         */
+        DictLayout(long[] ids, Map<Long, Set<String>> docTerms) {
+            Map<String, int[]> df = new HashMap<>();
+            for (Collection<String> ts : docTerms.values()) {
+                for (String t : ts) df.computeIfAbsent(t, k -> new int[1])[0]++;
+            }
+            Map<String, int[]> lists = new HashMap<>(df.size() * 2);
+            for (Map.Entry<String, int[]> e : df.entrySet()) lists.put(e.getKey(), new int[e.getValue()[0]]);
+            Map<String, int[]> cursor = new HashMap<>(df.size() * 2);
+            for (String t : df.keySet()) cursor.put(t, new int[1]);
+            for (int ord = 0; ord < ids.length; ord++) {
+                for (String t : docTerms.getOrDefault(ids[ord], Set.of())) lists.get(t)[cursor.get(t)[0]++] = ord;
+            }
+
+            String[] keys = lists.keySet().toArray(new String[0]);
+            byte[][] encoded = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++) encoded[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < keys.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+
+            this.terms = new byte[keys.length][];
+            this.postings = new int[keys.length][];
+            int p = 0, b = 0;
+            for (int i = 0; i < keys.length; i++) {
+                terms[i] = encoded[order[i]];
+                postings[i] = lists.get(keys[order[i]]);
+                p += postings[i].length;
+                b += terms[i].length;
+            }
+            this.postingCount = p;
+            this.size = 4 + 8 * (keys.length + 1) + 4 * p + b;
+        }
+
+        void write(ByteBuffer out, int off) {
+            int n = terms.length;
+            int termOffs = off + 4;
+            int postingOffs = termOffs + 4 * (n + 1);
+            int postingsAt = postingOffs + 4 * (n + 1);
+            int bytesAt = postingsAt + 4 * postingCount;
+            out.putInt(off, n);
+            int p = 0, b = 0;
+            for (int i = 0; i < n; i++) {
+                out.putInt(termOffs + 4 * i, b);
+                out.putInt(postingOffs + 4 * i, p);
+                for (int doc : postings[i]) out.putInt(postingsAt + 4 * p++, doc);
+                out.put(bytesAt + b, terms[i]);
+                b += terms[i].length;
+            }
+            out.putInt(termOffs + 4 * n, b);
+            out.putInt(postingOffs + 4 * n, p);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 知识库关键词的 Aho-Corasick 自动机：一次线性扫描问题文本，找出所有“关键词出现在问题里”的条目，
+ * 代价与问题长度相关而与知识库规模无关（替代逐行 :q LIKE %keywords%）。
+ * 构建后不可变，知识库变化时整体重建。
+ */
+final class KeywordAutomaton {
+
+    static final KeywordAutomaton EMPTY = build(Map.of());
+
+    // 每个状态的出边按字符升序存放，二分查找
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // 最近的、本身是关键词结尾的后缀状态，-1 表示没有
+    private final int[] outLink;
+    private final long[][] outputs;
+    private final int keywordCount;
+
+    private KeywordAutomaton(char[][] labels, int[][] targets, int[] fail, int[] outLink,
+                             long[][] outputs, int keywordCount) {
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.outLink = outLink;
+        this.outputs = outputs;
+        this.keywordCount = keywordCount;
+    }
+
+    /**
+     * @param keywords 归一化后的关键词 -> 包含该关键词的条目 id
+     */
+    static KeywordAutomaton build(Map<String, ? extends Collection<Long>> keywords) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<long[]> out = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        out.add(null);
+
+        int count = 0;
+        for (Map.Entry<String, ? extends Collection<Long>> e : keywords.entrySet()) {
+            String kw = e.getKey();
+            if (kw == null || kw.isEmpty() || e.getValue().isEmpty()) continue;
+            int s = 0;
+            for (int i = 0; i < kw.length(); i++) {
+                Integer t = trie.get(s).get(kw.charAt(i));
+                if (t == null) {
+                    t = trie.size();
+                    trie.get(s).put(kw.charAt(i), t);
+                    trie.add(new TreeMap<>());
+                    out.add(null);
+                }
+                s = t;
+            }
+            out.set(s, e.getValue().stream().mapToLong(Long::longValue).distinct().toArray());
+            count++;
+        }
+
+        int n = trie.size();
+        char[][] labels = new char[n][];
+        int[][] targets = new int[n][];
+        for (int s = 0; s < n; s++) {
+            TreeMap<Character, Integer> edges = trie.get(s);
+            labels[s] = new char[edges.size()];
+            targets[s] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                labels[s][i] = edge.getKey();
+                targets[s][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        int[] fail = new int[n];
+        int[] outLink = new int[n];
+        Arrays.fill(outLink, -1);
+        long[][] outputs = out.toArray(new long[0][]);
+        KeywordAutomaton a = new KeywordAutomaton(labels, targets, fail, outLink, outputs, count);
+
+        // BFS 计算失败指针：子状态的 fail = 父状态 fail 链上第一个有同字符出边的状态
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int t : targets[0]) queue.add(t);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int i = 0; i < labels[s].length; i++) {
+                int child = targets[s][i];
+                int f = s == 0 ? 0 : a.step(fail[s], labels[s][i]);
+                fail[child] = f;
+                outLink[child] = outputs[f] != null ? f : outLink[f];
+                queue.add(child);
+            }
+        }
+        return a;
+    }
+
+    /**
+     * @return 命中条目 id -> 命中的关键词个数（按首次命中顺序）
+     */
+    Map<Long, Integer> match(String text) {
+        Map<Long, Integer> hits = new LinkedHashMap<>();
+        if (text == null || keywordCount == 0) return hits;
+        int s = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) continue;
+            s = step(s, Character.toLowerCase(c));
+            for (int o = outputs[s] != null ? s : outLink[s]; o >= 0; o = outLink[o]) {
+                for (long id : outputs[o]) hits.merge(id, 1, Integer::sum);
+            }
+        }
+        return hits;
+    }
+
+    int size() {
+        return keywordCount;
+    }
+
+    /**
+     * 与 match 使用同样的字符规则：只保留字母数字并小写化。
+     */
+    static String normalize(String keyword) {
+        if (keyword == null) return "";
+        StringBuilder sb = new StringBuilder(keyword.length());
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private int step(int s, char c) {
+        while (true) {
+            int i = Arrays.binarySearch(labels[s], c);
+            if (i >= 0) return targets[s][i];
+            if (s == 0) return 0;
+            s = fail[s];
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import com.example.cs_agent_service.config.RetrievalProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.repo.KnowledgeBaseRepository;
+import com.example.cs_agent_service.service.change.KnowledgeChange;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 知识库内存倒排索引：对 active 条目的 question + keywords 建立字符 bigram/trigram 倒排表，
+ * 检索时按命中 n-gram 的 idf 权重打分，替代无法走索引的 LIKE '%q%'。
+ * 另维护一份关键词 Aho-Corasick 自动机：关键词完整出现在问题里的条目不受覆盖率阈值限制（长问题召回）。
+ * 只保存 id、n-gram 与关键词，不持有 answer。
+ * <p>
+ * 全量数据放在只读的 {@link IndexSegment} 里（配置了 snapshot-path 时就是 mmap 的磁盘快照，不占堆），
+ * 之后本节点的增删改写入堆内的增量表，基础段里对应的旧条目被遮蔽；下次全量重建时合并。
+ * 启动时快照与知识库状态一致则直接映射，不再全量加载。
+ */
+@Component
+public class KnowledgeIndex {
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeIndex.class);
+
+    private final KnowledgeBaseRepository repository;
+    private final RetrievalProperties props;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private IndexSegment base = IndexSegment.EMPTY;
+    // 基础段中已被 upsert/remove 覆盖的 id
+    private Set<Long> shadowed = new HashSet<>();
+    private Postings delta = new Postings();
+    // 关键词自动机不可变：知识库变化后由后台单线程重建再整体替换，检索只读这个字段、不等构建
+    private volatile KeywordAutomaton automaton = KeywordAutomaton.EMPTY;
+    // 关键词数据的版本，增删时在写锁内 +1；只发布比已发布版本新的自动机，旧数据的构建结果丢弃
+    private final AtomicLong keywordVersion = new AtomicLong();
+    private long publishedVersion = 0;
+    private final Object publishLock = new Object();
+    private final AtomicBoolean buildQueued = new AtomicBoolean();
+    private final ExecutorService automatonBuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "keyword-automaton");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean ready = false;
+    // 启动、定时校验和 RELOADED 事件都会触发全量重建；串行执行，后开始的一次读到的数据不会旧于先装上的
+    private final Object rebuildLock = new Object();
+
+    public KnowledgeIndex(KnowledgeBaseRepository repository, RetrievalProperties props) {
+        this.repository = repository;
+        this.props = props;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!props.isIndexEnabled()) return;
+        synchronized (rebuildLock) {
+            if (loadSnapshot()) scheduleAutomatonBuild();
+            else rebuild();
+        }
+    }
+
+    /**
+     * 兜底全量重建：其他节点对知识库的修改只能靠它同步过来。知识库自上次建段后没有变化时跳过。
+     */
+    @Scheduled(initialDelayString = "${agent.retrieval.refresh-interval-ms:300000}",
+            fixedDelayString = "${agent.retrieval.refresh-interval-ms:300000}")
+    public void scheduledRebuild() {
+        if (!props.isIndexEnabled()) return;
+        try {
+            if (currentStamp().equals(baseStamp())) return;
+        } catch (Exception e) {
+            log.warn("[index] stamp check failed, rebuild anyway. err={}", e.getMessage());
+        }
+        rebuild();
+    }
+
+    public void rebuild() {
+        try {
+            synchronized (rebuildLock) {
+                // 先取状态戳再读数据：两者之间的修改会让下次检查再重建一次，不会漏
+                IndexSegment.Stamp stamp = currentStamp();
+                List<Doc> docs = new ArrayList<>();
+                for (KnowledgeBaseRepository.IndexSource s : repository.findIndexSources()) {
+                    docs.add(new Doc(s.getId(), s.getQuestion(), s.getKeywords()));
+                }
+                rebuild(docs, stamp);
+            }
+        } catch (Exception e) {
+            // 保留旧索引继续服务
+            log.warn("[index] rebuild failed, keep previous index", e);
+        }
+    }
+
+    public void rebuild(Collection<KnowledgeBase> entries) {
+        List<Doc> docs = new ArrayList<>();
+        for (KnowledgeBase kb : entries) {
+            if (Boolean.TRUE.equals(kb.getActive())) docs.add(new Doc(kb.getId(), kb.getQuestion(), kb.getKeywords()));
+        }
+        rebuild(docs, IndexSegment.Stamp.NONE);
+    }
+
+    private void rebuild(List<Doc> docs, IndexSegment.Stamp stamp) {
+        long start = System.nanoTime();
+        Postings fresh = new Postings();
+        for (Doc d : docs) fresh.add(d.id(), gramsOf(d.question(), d.keywords()), keywordsOf(d.keywords()));
+        KeywordAutomaton freshAutomaton = KeywordAutomaton.build(fresh.keywords);
+        IndexSegment segment;
+        synchronized (rebuildLock) {
+            segment = persist(new IndexSegment.Builder(stamp, fresh.docGrams, fresh.docKeywords), stamp);
+            install(segment, freshAutomaton);
+        }
+        log.info("[index] rebuilt docs={} grams={} keywords={} segment={}KB cost={}ms",
+                segment.docs(), segment.gramCount(), segment.keywordCount(), segment.sizeBytes() / 1024,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 快照与知识库当前状态一致时直接映射，跳过全量加载；否则返回 false 由调用方重建。
+     */
+    private boolean loadSnapshot() {
+        Path path = snapshotPath();
+        if (path == null || !Files.exists(path)) return false;
+        long start = System.nanoTime();
+        try {
+            IndexSegment segment = IndexSegment.open(path);
+            IndexSegment.Stamp current;
+            try {
+                current = currentStamp();
+            } catch (RuntimeException e) {
+                segment.release();
+                throw e;
+            }
+            if (!segment.stamp().equals(current)) {
+                log.info("[index] snapshot stale, rebuild. snapshot={} current={}", segment.stamp(), current);
+                segment.release();
+                return false;
+            }
+            install(segment, KeywordAutomaton.EMPTY);
+            log.info("[index] loaded snapshot docs={} grams={} keywords={} segment={}KB cost={}ms",
+                    segment.docs(), segment.gramCount(), segment.keywordCount(), segment.sizeBytes() / 1024,
+                    (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (Exception e) {
+            log.warn("[index] snapshot unreadable, rebuild. path={} err={}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 有知识库状态戳时写快照并映射回来；没有快照路径或写失败时放在堆外内存。
+     */
+    private IndexSegment persist(IndexSegment.Builder builder, IndexSegment.Stamp stamp) {
+        Path path = snapshotPath();
+        if (path != null && !IndexSegment.Stamp.NONE.equals(stamp)) {
+            try {
+                return builder.writeTo(path);
+            } catch (IOException e) {
+                log.warn("[index] snapshot write failed, keep in memory. path={} err={}", path, e.getMessage());
+            }
+        }
+        return builder.toDirect();
+    }
+
+    private void install(IndexSegment segment, KeywordAutomaton freshAutomaton) {
+        long version;
+        IndexSegment previous;
+        lock.writeLock().lock();
+        try {
+            previous = base;
+            base = segment;
+            shadowed = new HashSet<>();
+            delta = new Postings();
+            version = keywordVersion.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        publish(freshAutomaton, version);
+        ready = true;
+        // 读者都在读锁内访问 base，写锁释放后已没有人持有旧段
+        previous.release();
+    }
+
+    /**
+     * 排一次后台构建；已有排队未开始的构建时不重复提交（它开始时会读到最新数据）。
+     * 十万级关键词构建需要几百毫秒，期间检索继续用旧自动机（快照刚加载时是空的，暂时没有关键词召回）。
+     */
+    private void scheduleAutomatonBuild() {
+        if (!buildQueued.compareAndSet(false, true)) return;
+        try {
+            automatonBuilder.execute(this::buildAutomaton);
+        } catch (RejectedExecutionException e) {
+            // 关闭中
+            buildQueued.set(false);
+        }
+    }
+
+    private void buildAutomaton() {
+        buildQueued.set(false);
+        Map<String, List<Long>> keywords;
+        long version;
+        lock.readLock().lock();
+        try {
+            keywords = liveKeywords();
+            version = keywordVersion.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            publish(KeywordAutomaton.build(keywords), version);
+        } catch (RuntimeException e) {
+            log.warn("[index] keyword automaton build failed, keep previous one", e);
+        }
+    }
+
+    private void publish(KeywordAutomaton built, long version) {
+        synchronized (publishLock) {
+            if (version <= publishedVersion) return;
+            publishedVersion = version;
+            automaton = built;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        automatonBuilder.shutdownNow();
+    }
+
+    private IndexSegment.Stamp currentStamp() {
+        return currentStamp(repository);
+    }
+
+    /**
+     * 知识库当前状态戳：active 条目数 + 最后修改时间。{@link VectorIndex} 也用它判断是否需要重建。
+     */
+    static IndexSegment.Stamp currentStamp(KnowledgeBaseRepository repository) {
+        long active = repository.countByActiveTrue();
+        LocalDateTime t = repository.findLastModified();
+        long lastModified = t == null ? 0 : t.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + t.getNano();
+        return new IndexSegment.Stamp(active, lastModified);
+    }
+
+    private IndexSegment.Stamp baseStamp() {
+        lock.readLock().lock();
+        try {
+            return base.stamp();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Path snapshotPath() {
+        String p = props.getSnapshotPath();
+        return p == null || p.isBlank() ? null : Path.of(p);
+    }
+
+    /**
+     * 本节点提交的变更与其他节点经变更流传来的变更，按条目增量更新。
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeChange(KnowledgeChange change) {
+        switch (change.kind()) {
+            case RELOADED -> rebuild();
+            case DEACTIVATED -> remove(change.id());
+            default -> upsert(change.id(), change.question(), change.keywords(), change.active());
+        }
+    }
+
+    /**
+     * 新增/修改后调用；inactive 条目会被移出索引。
+     */
+    public void upsert(KnowledgeBase kb) {
+        if (kb == null || kb.getId() == null) return;
+        upsert(kb.getId(), kb.getQuestion(), kb.getKeywords(), Boolean.TRUE.equals(kb.getActive()));
+    }
+
+    private void upsert(Long id, String question, String keywordList, boolean active) {
+        Set<String> grams = active ? gramsOf(question, keywordList) : Set.of();
+        Set<String> keywords = active ? keywordsOf(keywordList) : Set.of();
+        lock.writeLock().lock();
+        try {
+            shadow(id);
+            if (!grams.isEmpty() || !keywords.isEmpty()) delta.add(id, grams, keywords);
+            keywordVersion.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleAutomatonBuild();
+    }
+
+    public void remove(Long id) {
+        if (id == null) return;
+        lock.writeLock().lock();
+        try {
+            shadow(id);
+            keywordVersion.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleAutomatonBuild();
+    }
+
+    private void shadow(Long id) {
+        delta.remove(id);
+        if (base.ordinal(id) >= 0) shadowed.add(id);
+    }
+
+    public boolean isReady() {
+        return ready && props.isIndexEnabled();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按相关度降序返回至多 limit 个条目 id；覆盖率低于 minCoverage 的候选会被丢弃。
+     */
+    public List<Long> search(String query, int limit) {
+        Set<String> queryGrams = new LinkedHashSet<>();
+        for (String seg : segments(query)) addGrams(seg, queryGrams);
+        if (queryGrams.isEmpty() || limit <= 0) return List.of();
+
+        Map<Long, Integer> keywordHits = matchKeywords(query);
+        Map<Long, Double> scores = new HashMap<>();
+        double totalWeight = 0;
+
+        lock.readLock().lock();
+        try {
+            int n = liveDocs();
+            if (n == 0) return List.of();
+            IndexSegment.Dict dict = base.grams();
+            boolean anyShadowed = !shadowed.isEmpty();
+            for (String g : queryGrams) {
+                int t = dict.find(g);
+                int baseDf = t < 0 ? 0 : dict.df(t);
+                Set<Long> docs = delta.grams.get(g);
+                // df 含基础段里已被遮蔽的条目，偏差在下次全量重建后消失
+                int df = baseDf + (docs == null ? 0 : docs.size());
+                double idf = Math.log(1.0 + (double) (n + 1) / (df + 1));
+                totalWeight += idf;
+                for (int i = 0; i < baseDf; i++) {
+                    long id = base.id(dict.doc(t, i));
+                    if (!anyShadowed || !shadowed.contains(id)) scores.merge(id, idf, Double::sum);
+                }
+                if (docs == null) continue;
+                for (Long id : docs) scores.merge(id, idf, Double::sum);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        double threshold = totalWeight * props.getMinCoverage();
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>();
+        for (Map.Entry<Long, Double> e : scores.entrySet()) {
+            if (e.getValue() >= threshold || keywordHits.containsKey(e.getKey())) ranked.add(e);
+        }
+        ranked.sort((a, b) -> {
+            int c = Double.compare(b.getValue(), a.getValue());
+            return c != 0 ? c : Long.compare(a.getKey(), b.getKey());
+        });
+
+        List<Long> ids = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) ids.add(ranked.get(i).getKey());
+        return ids;
+    }
+
+    /**
+     * 关键词完整出现在文本中的条目 id -> 命中关键词数，一次扫描完成。
+     * 增删后到后台重建完成前（通常几毫秒到几百毫秒）仍按旧关键词匹配。
+     */
+    public Map<Long, Integer> matchKeywords(String text) {
+        return automaton.match(text);
+    }
+
+    private int liveDocs() {
+        return base.docs() - shadowed.size() + delta.docGrams.size();
+    }
+
+    /**
+     * 基础段（去掉被遮蔽的）与增量表合并后的关键词 -> 条目 id，用于重建自动机。调用方持锁。
+     */
+    private Map<String, List<Long>> liveKeywords() {
+        Map<String, List<Long>> out = new HashMap<>();
+        IndexSegment.Dict dict = base.keywords();
+        for (int t = 0; t < dict.terms; t++) {
+            int df = dict.df(t);
+            List<Long> ids = new ArrayList<>(df);
+            for (int i = 0; i < df; i++) {
+                long id = base.id(dict.doc(t, i));
+                if (!shadowed.contains(id)) ids.add(id);
+            }
+            if (!ids.isEmpty()) out.put(dict.term(t), ids);
+        }
+        for (Map.Entry<String, Set<Long>> e : delta.keywords.entrySet()) {
+            out.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).addAll(e.getValue());
+        }
+        return out;
+    }
+
+    static Set<String> gramsOf(String question, String keywords) {
+        Set<String> grams = new HashSet<>();
+        for (String seg : segments(question)) addGrams(seg, grams);
+        if (keywords != null) {
+            // 关键词逗号分隔，逐个切分，避免跨关键词产生噪声 n-gram
+            for (String kw : keywords.split("[,，]")) {
+                for (String seg : segments(kw)) addGrams(seg, grams);
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 逗号分隔的关键词，归一化后至少两个字符（单字关键词误命中太多）。
+     */
+    static Set<String> keywordsOf(String keywords) {
+        Set<String> out = new HashSet<>();
+        if (keywords == null) return out;
+        for (String kw : keywords.split("[,，]")) {
+            String k = KeywordAutomaton.normalize(kw);
+            if (k.length() >= 2) out.add(k);
+        }
+        return out;
+    }
+
+    /**
+     * 小写化并按非字母数字字符切段。
+     */
+    static List<String> segments(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null) return out;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if (sb.length() > 0) out.add(sb.toString());
+        return out;
+    }
+
+    private static void addGrams(String seg, Set<String> out) {
+        int len = seg.length();
+        for (int i = 0; i + 2 <= len; i++) out.add(seg.substring(i, i + 2));
+        for (int i = 0; i + 3 <= len; i++) out.add(seg.substring(i, i + 3));
+    }
+
+    private record Doc(Long id, String question, String keywords) {}
+
+    /**
+     * 堆内倒排表：全量重建时的中间结果，以及基础段之后的增量。
+     */
+    private static final class Postings {
+        final Map<String, Set<Long>> grams = new HashMap<>();
+        final Map<Long, Set<String>> docGrams = new HashMap<>();
+        final Map<String, Set<Long>> keywords = new HashMap<>();
+        final Map<Long, Set<String>> docKeywords = new HashMap<>();
+
+        void add(Long id, Set<String> docGramSet, Set<String> docKeywordSet) {
+            docGrams.put(id, docGramSet);
+            for (String g : docGramSet) grams.computeIfAbsent(g, k -> new HashSet<>()).add(id);
+            docKeywords.put(id, docKeywordSet);
+            for (String kw : docKeywordSet) keywords.computeIfAbsent(kw, k -> new HashSet<>()).add(id);
+        }
+
+        void remove(Long id) {
+            unlink(id, docGrams.remove(id), grams);
+            unlink(id, docKeywords.remove(id), keywords);
+        }
+
+        private static void unlink(Long id, Set<String> terms, Map<String, Set<Long>> postingsByTerm) {
+            if (terms == null) return;
+            for (String t : terms) {
+                Set<Long> docs = postingsByTerm.get(t);
+                if (docs == null) continue;
+                docs.remove(id);
+                if (docs.isEmpty()) postingsByTerm.remove(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reciprocal Rank Fusion：每路结果按名次贡献 1 / (K + rank)，只看名次不看分值，
+ * 词法得分与向量相似度无需换算到同一尺度。同分时先出现的（靠前的列表）优先。
+ */
+public final class RankFusion {
+
+    static final int K = 60;
+
+    private RankFusion() {
+    }
+
+    public static List<Long> reciprocalRank(List<List<Long>> rankings, int limit) {
+        Map<Long, Double> scores = new LinkedHashMap<>();
+        for (List<Long> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank), 1.0 / (K + rank + 1), Double::sum);
+            }
+        }
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+        // 稳定排序保留首次出现的顺序
+        ranked.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+        List<Long> out = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) out.add(ranked.get(i).getKey());
+        return out;
+    }
+}
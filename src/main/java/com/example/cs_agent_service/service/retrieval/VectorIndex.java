@@ -0,0 +1,318 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import com.example.cs_agent_service.config.RetrievalProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.repo.KnowledgeBaseRepository;
+import com.example.cs_agent_service.service.KnowledgeBaseService;
+import com.example.cs_agent_service.service.change.KnowledgeChange;
+import com.example.cs_agent_service.service.embedding.EmbeddingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 知识库向量索引：active 条目归一化后的问题经 {@link EmbeddingProvider} 向量化，存入内存 HNSW 图。
+ * 用于召回与原问题没有共同字串的同义问法；只保存 id 与向量，不持有 answer。
+ * agent.retrieval.mode 为 vector / hybrid 时启用（默认关闭），生命周期与 {@link KnowledgeIndex} 一致。
+ * <p>
+ * 每次全量重建后把向量写到 {@link VectorSnapshot}；启动时快照的状态戳与知识库一致就直接建图，
+ * 不一致也拿它当已有向量复用，只为变过的问题调用向量化。向量与图仍在堆上。
+ * <p>
+ * 日常的增删改由 {@link KnowledgeChange} 事件逐条更新图；定时全量重建只是兜底（漏掉的事件），
+ * 知识库状态戳没变时跳过。重建时问题没变的条目沿用已有向量，只为新增或改过的问题调用向量化
+ * （dashscope 时是远程调用）。
+ */
+@Component
+public class VectorIndex {
+    private static final Logger log = LoggerFactory.getLogger(VectorIndex.class);
+
+    // 固定种子：同一批数据在各节点建出相同的图
+    private static final long SEED = 42;
+
+    private final KnowledgeBaseRepository repository;
+    private final EmbeddingProvider embeddings;
+    private final RetrievalProperties props;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private HnswIndex graph;
+    // 图中每个条目的向量及其来源问题（归一化后），重建时复用；与 graph 一起在写锁内替换
+    private Map<Long, Embedded> embedded = new HashMap<>();
+    // 上次全量重建时的知识库状态戳
+    private volatile IndexSegment.Stamp builtStamp = IndexSegment.Stamp.NONE;
+    private volatile boolean ready = false;
+    // 启动、定时校验和 RELOADED 事件都会触发全量重建；串行执行，避免旧数据的图后装上
+    private final Object rebuildLock = new Object();
+
+    public VectorIndex(KnowledgeBaseRepository repository, EmbeddingProvider embeddings, RetrievalProperties props) {
+        this.repository = repository;
+        this.embeddings = embeddings;
+        this.props = props;
+        this.graph = newGraph();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!props.isVectorEnabled()) return;
+        synchronized (rebuildLock) {
+            if (!loadSnapshot()) rebuild();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${agent.retrieval.refresh-interval-ms:300000}",
+            fixedDelayString = "${agent.retrieval.refresh-interval-ms:300000}")
+    public void scheduledRebuild() {
+        if (!props.isVectorEnabled()) return;
+        try {
+            if (KnowledgeIndex.currentStamp(repository).equals(builtStamp)) return;
+        } catch (Exception e) {
+            log.warn("[vector] stamp check failed, rebuild anyway. err={}", e.getMessage());
+        }
+        rebuild();
+    }
+
+    public void rebuild() {
+        try {
+            synchronized (rebuildLock) {
+                // 先取状态戳再读数据：两者之间的修改会让下次检查再重建一次，不会漏
+                IndexSegment.Stamp stamp = KnowledgeIndex.currentStamp(repository);
+                Map<Long, String> questions = new LinkedHashMap<>();
+                for (KnowledgeBaseRepository.IndexSource s : repository.findIndexSources()) {
+                    questions.put(s.getId(), s.getQuestion());
+                }
+                rebuild(questions, stamp);
+            }
+        } catch (Exception e) {
+            // 保留旧索引继续服务
+            log.warn("[vector] rebuild failed, keep previous index", e);
+        }
+    }
+
+    /**
+     * 在锁外建新图再整体替换，重建期间检索不受影响。
+     */
+    public void rebuild(Collection<KnowledgeBase> entries) {
+        Map<Long, String> questions = new LinkedHashMap<>();
+        for (KnowledgeBase kb : entries) {
+            if (Boolean.TRUE.equals(kb.getActive())) questions.put(kb.getId(), kb.getQuestion());
+        }
+        synchronized (rebuildLock) {
+            rebuild(questions, IndexSegment.Stamp.NONE);
+        }
+    }
+
+    private void rebuild(Map<Long, String> questions, IndexSegment.Stamp stamp) {
+        long start = System.nanoTime();
+        Map<Long, Embedded> previous;
+        lock.readLock().lock();
+        try {
+            previous = embedded;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        HnswIndex fresh = newGraph();
+        Map<Long, Embedded> freshEmbedded = new HashMap<>(questions.size() * 2);
+        int embeddedNow = 0;
+        for (Map.Entry<Long, String> e : questions.entrySet()) {
+            String core = KnowledgeBaseService.normalizeQuestion(e.getValue());
+            Embedded old = previous.get(e.getKey());
+            Embedded en;
+            if (old != null && old.core().equals(core)) {
+                en = old;
+            } else {
+                float[] v = embed(core);
+                if (v == null) continue;
+                en = new Embedded(core, v);
+                embeddedNow++;
+            }
+            fresh.add(e.getKey(), en.vector());
+            freshEmbedded.put(e.getKey(), en);
+        }
+        install(fresh, freshEmbedded, stamp);
+        log.info("[vector] rebuilt docs={} embedded={} dims={} cost={}ms",
+                fresh.size(), embeddedNow, embeddings.dimensions(), (System.nanoTime() - start) / 1_000_000);
+        persist(freshEmbedded, stamp);
+    }
+
+    private void install(HnswIndex fresh, Map<Long, Embedded> freshEmbedded, IndexSegment.Stamp stamp) {
+        lock.writeLock().lock();
+        try {
+            graph = fresh;
+            embedded = freshEmbedded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        builtStamp = stamp;
+        ready = true;
+    }
+
+    /**
+     * 快照与知识库状态一致时直接建图；否则只把快照里的向量留作复用，返回 false 由调用方重建。
+     */
+    private boolean loadSnapshot() {
+        Path path = snapshotPath();
+        if (path == null || !Files.exists(path)) return false;
+        long start = System.nanoTime();
+        try {
+            VectorSnapshot.Loaded snapshot = VectorSnapshot.read(path, embeddings.id(), embeddings.dimensions());
+            IndexSegment.Stamp current = KnowledgeIndex.currentStamp(repository);
+            if (!snapshot.stamp().equals(current)) {
+                lock.writeLock().lock();
+                try {
+                    embedded = snapshot.entries();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                log.info("[vector] snapshot stale, rebuild with {} stored vectors. snapshot={} current={}",
+                        snapshot.entries().size(), snapshot.stamp(), current);
+                return false;
+            }
+            HnswIndex fresh = newGraph();
+            for (Map.Entry<Long, Embedded> e : snapshot.entries().entrySet()) fresh.add(e.getKey(), e.getValue().vector());
+            install(fresh, snapshot.entries(), current);
+            log.info("[vector] snapshot loaded docs={} cost={}ms", fresh.size(), (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (Exception e) {
+            log.warn("[vector] snapshot unusable, rebuild. path={} err={}", path, e.getMessage());
+            return false;
+        }
+    }
+
+    private void persist(Map<Long, Embedded> entries, IndexSegment.Stamp stamp) {
+        Path path = snapshotPath();
+        if (path == null || IndexSegment.Stamp.NONE.equals(stamp)) return;
+        try {
+            VectorSnapshot.write(path, embeddings.id(), embeddings.dimensions(), stamp, entries);
+        } catch (IOException e) {
+            log.warn("[vector] snapshot write failed. path={} err={}", path, e.getMessage());
+        }
+    }
+
+    private Path snapshotPath() {
+        String p = props.getSnapshotPath();
+        return p == null || p.isBlank() ? null : Path.of(p + ".vec");
+    }
+
+    /**
+     * 向量只由 question 生成：只改 answer/keywords 的修改不需要重新向量化。
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeChange(KnowledgeChange change) {
+        switch (change.kind()) {
+            case RELOADED -> {
+                if (isReady()) rebuild();
+            }
+            case DEACTIVATED -> remove(change.id());
+            default -> {
+                if (change.questionChanged()) upsert(change.id(), change.question(), change.active());
+            }
+        }
+    }
+
+    /**
+     * 新增/修改后调用；inactive 条目会被移出索引。
+     */
+    public void upsert(KnowledgeBase kb) {
+        if (kb == null || kb.getId() == null) return;
+        upsert(kb.getId(), kb.getQuestion(), Boolean.TRUE.equals(kb.getActive()));
+    }
+
+    private void upsert(Long id, String question, boolean active) {
+        if (!props.isVectorEnabled()) return;
+        String core = active ? KnowledgeBaseService.normalizeQuestion(question) : "";
+        float[] v = embed(core);
+        lock.writeLock().lock();
+        try {
+            if (v != null) {
+                graph.add(id, v);
+                embedded.put(id, new Embedded(core, v));
+            } else {
+                graph.remove(id);
+                embedded.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        if (id == null) return;
+        lock.writeLock().lock();
+        try {
+            graph.remove(id);
+            embedded.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready && props.isVectorEnabled();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return graph.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按相似度降序返回至多 limit 个条目 id；相似度低于 vectorMinSimilarity 的不返回。
+     */
+    public List<Long> search(String query, int limit) {
+        float[] v = vectorOf(query);
+        if (v == null || limit <= 0) return List.of();
+        List<HnswIndex.Hit> hits;
+        lock.readLock().lock();
+        try {
+            hits = graph.search(v, limit, props.getHnswEfSearch());
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Long> ids = new ArrayList<>(hits.size());
+        for (HnswIndex.Hit h : hits) {
+            if (h.similarity() >= props.getVectorMinSimilarity()) ids.add(h.id());
+        }
+        return ids;
+    }
+
+    private HnswIndex newGraph() {
+        return new HnswIndex(props.getHnswM(), props.getHnswEfConstruction(), SEED);
+    }
+
+    private float[] vectorOf(String text) {
+        return embed(KnowledgeBaseService.normalizeQuestion(text));
+    }
+
+    private float[] embed(String core) {
+        if (core.isBlank()) return null;
+        try {
+            return embeddings.embed(core);
+        } catch (Exception e) {
+            // 向量化失败只影响向量召回，词法检索照常
+            log.warn("[vector] embed failed, skip. err={}", e.getMessage());
+            return null;
+        }
+    }
+
+    record Embedded(String core, float[] vector) {}
+}
@@ -0,0 +1,92 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 向量快照：每个条目归一化后的问题与向量，写在 n-gram 快照旁（{snapshot-path}.vec），
+ * 启动时不必把整个知识库重新向量化（dashscope 时是一次次远程调用）。
+ * <pre>
+ * header   magic | version | stamp.activeCount | stamp.lastModified | dims | count | provider（UTF）
+ * entry    id | core（UTF）| float[dims]
+ * </pre>
+ * 向量只取决于问题文本和向量化实现：provider 标识或维度不同的快照整体作废。
+ */
+final class VectorSnapshot {
+
+    private static final int MAGIC = 0x4B425643;
+    private static final int VERSION = 1;
+
+    private VectorSnapshot() {}
+
+    record Loaded(IndexSegment.Stamp stamp, Map<Long, VectorIndex.Embedded> entries) {}
+
+    /**
+     * 写同目录下的临时文件后原子改名，读者不会看到写了一半的快照。
+     */
+    static void write(Path path, String provider, int dims, IndexSegment.Stamp stamp,
+                      Map<Long, VectorIndex.Embedded> entries) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path dir = target.getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, target.getFileName() + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(stamp.activeCount());
+                out.writeLong(stamp.lastModified());
+                out.writeInt(dims);
+                out.writeInt(entries.size());
+                out.writeUTF(provider);
+                for (Map.Entry<Long, VectorIndex.Embedded> e : entries.entrySet()) {
+                    float[] v = e.getValue().vector();
+                    if (v.length != dims) throw new IOException("vector of entry " + e.getKey() + " has " + v.length + " dims");
+                    out.writeLong(e.getKey());
+                    out.writeUTF(e.getValue().core());
+                    for (float x : v) out.writeFloat(x);
+                }
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static Loaded read(Path path, String provider, int dims) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a vector snapshot");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("unsupported vector snapshot version " + version);
+            IndexSegment.Stamp stamp = new IndexSegment.Stamp(in.readLong(), in.readLong());
+            int fileDims = in.readInt();
+            int count = in.readInt();
+            String fileProvider = in.readUTF();
+            if (fileDims != dims || !fileProvider.equals(provider)) {
+                throw new IOException("embedding changed: snapshot=" + fileProvider + "/" + fileDims + " current=" + provider + "/" + dims);
+            }
+            Map<Long, VectorIndex.Embedded> entries = new HashMap<>(Math.max(16, count * 2));
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                String core = in.readUTF();
+                float[] v = new float[dims];
+                for (int d = 0; d < dims; d++) v[d] = in.readFloat();
+                entries.put(id, new VectorIndex.Embedded(core, v));
+            }
+            return new Loaded(stamp, entries);
+        }
+    }
+}
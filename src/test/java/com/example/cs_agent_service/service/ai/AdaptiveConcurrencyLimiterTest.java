@@ -0,0 +1,85 @@
+package com.example.cs_agent_service.service.ai;
+
+import com.example.cs_agent_service.config.LlmLimiterProperties;
+import com.example.cs_agent_service.service.ai.AdaptiveConcurrencyLimiter.Permit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private LlmLimiterProperties props;
+
+    @BeforeEach
+    void setUp() {
+        props = new LlmLimiterProperties();
+        props.setInitialLimit(10);
+        props.setMinLimit(2);
+        props.setMaxLimit(20);
+        props.setQueueSize(1);
+        props.setMaxWaitMs(60_000);
+    }
+
+    @Test
+    void limitGrowsWhenBusyAndFastShrinksWhenSlow() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        // 并发打满、延迟稳定：上限逐步增长
+        for (int round = 0; round < 20; round++) {
+            List<Permit> permits = acquire(limiter, limiter.limit());
+            advance(100);
+            permits.forEach(Permit::success);
+        }
+        int grown = limiter.limit();
+        assertThat(grown).isGreaterThan(10);
+
+        // 延迟升到基线的 5 倍：每个 RTT 最多降一次
+        for (int round = 0; round < 10; round++) {
+            List<Permit> permits = acquire(limiter, limiter.limit());
+            advance(500);
+            permits.forEach(Permit::success);
+        }
+        assertThat(limiter.limit()).isLessThan(grown);
+    }
+
+    @Test
+    void queuesThenRejectsWhenFull() {
+        props.setInitialLimit(2);
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        List<Permit> running = acquire(limiter, 2);
+
+        CompletableFuture<Permit> queued = limiter.acquire();
+        assertThat(queued).isNotDone();
+        assertThat(limiter.queued()).isEqualTo(1);
+        assertThatThrownBy(() -> limiter.acquire().join()).hasCauseInstanceOf(LlmOverloadedException.class);
+
+        // 释放一个名额：排队的请求拿到许可
+        running.get(0).ignore();
+        assertThat(queued).isCompleted();
+        assertThat(limiter.inFlight()).isEqualTo(2);
+        assertThat(limiter.queued()).isZero();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter() {
+        return new AdaptiveConcurrencyLimiter(props, new SimpleMeterRegistry(), now::get);
+    }
+
+    private static List<Permit> acquire(AdaptiveConcurrencyLimiter limiter, int n) {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < n; i++) permits.add(limiter.acquire().join());
+        return permits;
+    }
+
+    private void advance(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
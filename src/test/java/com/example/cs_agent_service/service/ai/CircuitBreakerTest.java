@@ -0,0 +1,67 @@
+package com.example.cs_agent_service.service.ai;
+
+import com.example.cs_agent_service.config.LlmResilienceProperties.Policy;
+import com.example.cs_agent_service.service.ai.CircuitBreaker.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        Policy policy = new Policy();
+        policy.setBreakerWindow(10);
+        policy.setBreakerMinCalls(5);
+        policy.setBreakerFailureRate(0.5);
+        policy.setBreakerOpenMs(1000);
+        policy.setBreakerHalfOpenCalls(2);
+        breaker = new CircuitBreaker(policy, now::get);
+    }
+
+    @Test
+    void opensOnFailureRateAndRecoversThroughHalfOpen() {
+        for (int i = 0; i < 3; i++) call(true);
+        for (int i = 0; i < 2; i++) call(false);
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+
+        call(false);
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        // open-ms 之后只放行 half-open-calls 个试探请求
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.state()).isEqualTo(State.HALF_OPEN);
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+        assertThat(breaker.state()).isEqualTo(State.CLOSED);
+    }
+
+    @Test
+    void failedTrialReopens() {
+        for (int i = 0; i < 5; i++) call(false);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+        assertThat(breaker.state()).isEqualTo(State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    private void call(boolean success) {
+        assertThat(breaker.tryAcquire()).isTrue();
+        if (success) breaker.onSuccess();
+        else breaker.onFailure();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.cs_agent_service.service.archive;
+
+import com.example.cs_agent_service.dto.MessageResponse;
+import com.example.cs_agent_service.entity.MessageSender;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageArchiveCodecTest {
+
+    @Test
+    void chunkRoundTripsAndCompresses() {
+        Instant t = Instant.parse("2026-03-01T08:00:00.123456Z");
+        List<MessageResponse> messages = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            MessageSender sender = i % 2 == 0 ? MessageSender.USER : MessageSender.AGENT;
+            String content = sender == MessageSender.USER ? "黑胶VIP多少钱？第" + i + "次" : "黑胶VIP连续包月15元，可随时取消。";
+            messages.add(new MessageResponse(1000L + i * 3, sender, content, t.plusMillis(i * 1500L)));
+        }
+        // 缓冲写入的消息 createdAt 可能比前一条更早
+        messages.add(new MessageResponse(2000L, MessageSender.USER, "", t.minusSeconds(5)));
+
+        MessageArchiveCodec.Encoded encoded = MessageArchiveCodec.encode(messages);
+
+        assertThat(MessageArchiveCodec.decode(encoded.payload())).isEqualTo(messages);
+        assertThat(encoded.payload().length).isLessThan(encoded.rawBytes() / 4);
+    }
+
+    @Test
+    void corruptChunkIsRejected() {
+        byte[] payload = MessageArchiveCodec.encode(List.of(
+                new MessageResponse(1L, MessageSender.USER, "云贝有什么用？", Instant.EPOCH))).payload();
+
+        assertThatThrownBy(() -> MessageArchiveCodec.decode(Arrays.copyOf(payload, payload.length - 2)))
+                .isInstanceOf(IllegalArgumentException.class);
+        payload[0] = 9;
+        assertThatThrownBy(() -> MessageArchiveCodec.decode(payload)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
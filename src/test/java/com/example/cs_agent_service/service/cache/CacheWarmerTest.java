@@ -0,0 +1,78 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.CacheWarmupProperties;
+import com.example.cs_agent_service.dto.ChatResponse;
+import com.example.cs_agent_service.repo.KnowledgeBaseRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheWarmerTest {
+
+    @Test
+    void readyOnceWarmFractionReached() throws Exception {
+        CacheWarmupProperties props = new CacheWarmupProperties();
+        props.setEnabled(true);
+        props.setConcurrency(4);
+        props.setReadyFraction(0.5);
+        CacheProperties cacheProps = new CacheProperties();
+        cacheProps.setEnabled(true);
+        CacheWarmer warmer = new CacheWarmer(null, null, props, cacheProps, new SimpleMeterRegistry());
+        assertThat(warmer.isReady()).isFalse();
+
+        Map<String, CompletableFuture<ChatResponse>> calls = new ConcurrentHashMap<>();
+        warmer.run(List.of("q1", "q2", "q3", "q4"), q -> calls.computeIfAbsent(q, k -> new CompletableFuture<>()));
+        await(() -> calls.size() == 4);
+
+        calls.get("q1").complete(ChatResponse.of("a1", 3));
+        calls.get("q2").complete(ChatResponse.degraded("kb", 3));
+        await(() -> warmer.warmed() + warmer.failed() == 2);
+        assertThat(warmer.isReady()).isFalse();
+
+        calls.get("q3").complete(ChatResponse.of("a3", 1));
+        await(warmer::isReady);
+        assertThat(warmer.phase()).isEqualTo(CacheWarmer.Phase.RUNNING);
+
+        calls.get("q4").complete(ChatResponse.of("抱歉", 0));
+        await(() -> warmer.phase() == CacheWarmer.Phase.DONE);
+        assertThat(warmer.warmed()).isEqualTo(2);
+        assertThat(warmer.refused()).isEqualTo(1);
+        assertThat(warmer.failed()).isEqualTo(1);
+    }
+
+    @Test
+    void questionsAreDistinctAndOrderedById() {
+        List<KnowledgeBaseRepository.IndexSource> entries = List.of(
+                kb(3L, "怎么退款？"),
+                kb(1L, "如何开通会员"),
+                kb(2L, " "),
+                kb(4L, "怎么 退款"),
+                kb(5L, "歌词不同步"));
+
+        assertThat(CacheWarmer.questions(entries, 0)).containsExactly("如何开通会员", "怎么退款？", "歌词不同步");
+        assertThat(CacheWarmer.questions(entries, 2)).containsExactly("如何开通会员", "怎么退款？");
+    }
+
+    private static KnowledgeBaseRepository.IndexSource kb(Long id, String question) {
+        return new Source(id, question, null);
+    }
+
+    private record Source(Long getId, String getQuestion, String getKeywords)
+            implements KnowledgeBaseRepository.IndexSource {}
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+}
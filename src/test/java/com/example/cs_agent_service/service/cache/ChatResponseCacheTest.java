@@ -0,0 +1,65 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.dto.ChatResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatResponseCacheTest {
+
+    private final StubRedis redis = new StubRedis();
+    private final CacheProperties props = new CacheProperties();
+    private final ChatResponseCache cache = new ChatResponseCache(redis, props, new SimpleMeterRegistry());
+
+    @Test
+    void l2HitDoesNotOutliveTheRedisEntryInL1() throws InterruptedException {
+        ChatResponse refusal = ChatResponse.of("抱歉，小云暂时还没学会这个问题", 0);
+        // 另一个节点写入后 Redis 里只剩 200ms
+        redis.values.put("k", ChatResponseCodec.encode(refusal, System.currentTimeMillis() + 200, 512));
+
+        assertThat(cache.get("k")).contains(refusal);
+        assertThat(cache.get("k")).contains(refusal);
+        assertThat(redis.gets).isEqualTo(1);
+
+        redis.values.remove("k");
+        Thread.sleep(300);
+        assertThat(cache.get("k")).isEmpty();
+        assertThat(redis.gets).isEqualTo(2);
+    }
+
+    @Test
+    void expiredHeaderIsServedButNotCachedLocally() {
+        ChatResponse answer = ChatResponse.of("答案", 1);
+        redis.values.put("k", ChatResponseCodec.encode(answer, System.currentTimeMillis() - 1_000, 512));
+
+        assertThat(cache.get("k")).contains(answer);
+        assertThat(cache.get("k")).contains(answer);
+        assertThat(redis.gets).isEqualTo(2);
+    }
+
+    private static final class StubRedis extends RedisCacheService {
+        final Map<String, byte[]> values = new HashMap<>();
+        int gets;
+
+        StubRedis() {
+            super(null, new SimpleMeterRegistry());
+        }
+
+        @Override
+        public Optional<byte[]> getBytes(String key) {
+            gets++;
+            return Optional.ofNullable(values.get(key));
+        }
+
+        @Override
+        public void setBytes(String key, byte[] value, long ttlSeconds) {
+            values.put(key, value);
+        }
+    }
+}
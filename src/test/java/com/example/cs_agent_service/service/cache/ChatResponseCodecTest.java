@@ -0,0 +1,43 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.dto.ChatResponse;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatResponseCodecTest {
+
+    @Test
+    void roundTripsShortAndCompressedAnswers() {
+        ChatResponse refusal = ChatResponse.of("抱歉，小云暂时还没学会这个问题", 0);
+        assertThat(ChatResponseCodec.decode(ChatResponseCodec.encode(refusal, 0L, 512))).contains(refusal);
+
+        ChatResponse longAnswer = ChatResponse.of("进入【我的】-【设置】-【自动续费管理】关闭连续包月。".repeat(40), 5);
+        byte[] encoded = ChatResponseCodec.encode(longAnswer, 0L, 512);
+        assertThat(encoded.length).isLessThan(longAnswer.answer().getBytes(StandardCharsets.UTF_8).length / 4);
+        assertThat(ChatResponseCodec.decode(encoded)).contains(longAnswer);
+    }
+
+    @Test
+    void carriesTheRedisExpiry() {
+        long expiresAt = 1_792_280_142_418L;
+        byte[] encoded = ChatResponseCodec.encode(ChatResponse.of("答案", 1), expiresAt, 512);
+        assertThat(ChatResponseCodec.decodeEntry(encoded)).hasValueSatisfying(d -> {
+            assertThat(d.expiresAtMillis()).isEqualTo(expiresAt);
+            assertThat(d.value()).isEqualTo(ChatResponse.of("答案", 1));
+        });
+    }
+
+    @Test
+    void oldJsonAndCorruptValuesAreMisses() {
+        byte[] json = "{\"answer\":\"hi\",\"hits\":1}".getBytes(StandardCharsets.UTF_8);
+        assertThat(ChatResponseCodec.decode(json)).isEmpty();
+
+        byte[] encoded = ChatResponseCodec.encode(ChatResponse.of("答案".repeat(400), 3), 0L, 16);
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+        assertThat(ChatResponseCodec.decode(truncated)).isEmpty();
+    }
+}
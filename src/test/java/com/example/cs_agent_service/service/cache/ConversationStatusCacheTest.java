@@ -0,0 +1,59 @@
+package com.example.cs_agent_service.service.cache;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.ConversationStatusProperties;
+import com.example.cs_agent_service.entity.ConversationStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationStatusCacheTest {
+
+    private final Map<Long, ConversationStatus> db = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final ConversationStatusCache cache = new ConversationStatusCache(
+            id -> {
+                loads.incrementAndGet();
+                return Optional.ofNullable(db.get(id));
+            },
+            null, new CacheProperties(), new ConversationStatusProperties(), new SimpleMeterRegistry());
+
+    @Test
+    void statusIsLoadedOnceAndClosingOverridesIt() {
+        db.put(1L, ConversationStatus.OPEN);
+
+        assertThat(cache.get(1L)).contains(ConversationStatus.OPEN);
+        assertThat(cache.get(1L)).contains(ConversationStatus.OPEN);
+        assertThat(loads).hasValue(1);
+
+        cache.closed(1L);
+        assertThat(cache.get(1L)).contains(ConversationStatus.CLOSED);
+        assertThat(loads).hasValue(1);
+
+        // 不存在的会话不缓存
+        assertThat(cache.get(2L)).isEmpty();
+        assertThat(cache.get(2L)).isEmpty();
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void peerCloseWinsOverStaleOpen() {
+        cache.opened(5L);
+        cache.onMessage(new DefaultMessage("ch".getBytes(StandardCharsets.UTF_8),
+                "other-node|5".getBytes(StandardCharsets.UTF_8)), null);
+        assertThat(cache.get(5L)).contains(ConversationStatus.CLOSED);
+
+        // 迟到的 OPEN（查库早于关闭提交）不能覆盖 CLOSED
+        cache.opened(5L);
+        assertThat(cache.get(5L)).contains(ConversationStatus.CLOSED);
+        assertThat(loads).hasValue(0);
+    }
+}
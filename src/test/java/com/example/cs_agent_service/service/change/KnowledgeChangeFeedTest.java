@@ -0,0 +1,84 @@
+package com.example.cs_agent_service.service.change;
+
+import com.example.cs_agent_service.config.KnowledgeChangeProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KnowledgeChangeFeedTest {
+
+    private final InMemoryChangeStream stream = new InMemoryChangeStream(100);
+
+    @Test
+    void changesReachOtherNodesButNotTheOrigin() {
+        List<Object> onA = new ArrayList<>();
+        List<Object> onB = new ArrayList<>();
+        KnowledgeChangeFeed a = feed(onA);
+        KnowledgeChangeFeed b = feed(onB);
+        a.poll();
+        b.poll();
+
+        a.onLocalChange(change(KnowledgeChange.Kind.CREATED, 7, 0, "云贝有什么用？"));
+        a.poll();
+        b.poll();
+
+        assertThat(onA).isEmpty();
+        assertThat(onB).singleElement().isInstanceOfSatisfying(KnowledgeChange.class, c -> {
+            assertThat(c.remote()).isTrue();
+            assertThat(c.kind()).isEqualTo(KnowledgeChange.Kind.CREATED);
+            assertThat(c.id()).isEqualTo(7L);
+            assertThat(c.question()).isEqualTo("云贝有什么用？");
+            assertThat(c.keywords()).isEqualTo("kw");
+            assertThat(c.active()).isTrue();
+        });
+    }
+
+    @Test
+    void lateOlderVersionsAreDropped() {
+        List<Object> onB = new ArrayList<>();
+        KnowledgeChangeFeed a = feed(new ArrayList<>());
+        KnowledgeChangeFeed b = feed(onB);
+        KnowledgeChangeFeed c = feed(new ArrayList<>());
+        b.poll();
+
+        // b 本地已提交 v3；a 的 v2、c 的 v1 后到
+        b.onLocalChange(change(KnowledgeChange.Kind.UPDATED, 7, 3, "新问题"));
+        a.onLocalChange(change(KnowledgeChange.Kind.UPDATED, 7, 2, "旧问题"));
+        c.onLocalChange(change(KnowledgeChange.Kind.UPDATED, 7, 1, "更旧的问题"));
+        a.onLocalChange(change(KnowledgeChange.Kind.DEACTIVATED, 7, 4, "新问题"));
+        a.onLocalChange(KnowledgeChange.reloaded());
+        b.poll();
+
+        assertThat(onB).extracting(e -> ((KnowledgeChange) e).kind())
+                .containsExactly(KnowledgeChange.Kind.DEACTIVATED, KnowledgeChange.Kind.RELOADED);
+    }
+
+    @Test
+    void inMemoryStreamKeepsOnlyTheLastMaxLenEntries() {
+        InMemoryChangeStream capped = new InMemoryChangeStream(3);
+        for (int i = 1; i <= 5; i++) capped.append(Map.of("n", Integer.toString(i)));
+
+        assertThat(capped.tail()).contains("5");
+        // 落后于保留窗口的游标从最早保留的条目读起
+        assertThat(capped.readAfter("0", 10)).extracting(KnowledgeChangeStream.Entry::id).containsExactly("3", "4", "5");
+        assertThat(capped.readAfter("3", 1)).singleElement().satisfies(e -> {
+            assertThat(e.id()).isEqualTo("4");
+            assertThat(e.fields().get("n")).isEqualTo("4");
+        });
+        assertThat(capped.readAfter("5", 10)).isEmpty();
+    }
+
+    private KnowledgeChangeFeed feed(List<Object> published) {
+        return new KnowledgeChangeFeed(stream, published::add, new KnowledgeChangeProperties(), new SimpleMeterRegistry());
+    }
+
+    private static KnowledgeChange change(KnowledgeChange.Kind kind, long id, long version, String question) {
+        return new KnowledgeChange(kind, id, version, question, "kw", kind != KnowledgeChange.Kind.DEACTIVATED,
+                true, true, false);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.cs_agent_service.service.context;
+
+import com.example.cs_agent_service.service.ai.DashScopeClient.Turn;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextWindowTest {
+
+    @Test
+    void keepsMostRecentMessagesWithinCount() {
+        ContextWindow w = new ContextWindow(3, 1000, 0);
+        for (int i = 1; i <= 5; i++) w.append(Turn.user("q" + i), i);
+
+        assertThat(w.turns()).extracting(Turn::content).containsExactly("q3", "q4", "q5");
+        assertThat(w.lastMessageId()).isEqualTo(5);
+    }
+
+    @Test
+    void dropsOldestWhenTokenBudgetExceeded() {
+        ContextWindow w = new ContextWindow(10, 10, 0);
+        w.append(Turn.user("黑胶会员多少钱"), 1);      // 7
+        w.append(Turn.assistant("每月十五元"), 2);     // 5，超出预算，丢弃第一条
+
+        assertThat(w.turns()).extracting(Turn::content).containsExactly("每月十五元");
+        assertThat(w.tokens()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.cs_agent_service.service.importing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvReaderTest {
+
+    @Test
+    void parsesQuotedCommasNewlinesAndEscapedQuotes() throws Exception {
+        CsvReader r = new CsvReader(new StringReader(
+                "question,answer,keywords\r\n"
+                        + "云贝有什么用？,\"可以兑换周边，\n也可以打赏\",\"云贝,兑换\"\n"
+                        + "\n"
+                        + "a,\"他说\"\"你好\"\"\",\n"));
+
+        assertThat(r.next()).containsExactly("question", "answer", "keywords");
+        assertThat(r.next()).containsExactly("云贝有什么用？", "可以兑换周边，\n也可以打赏", "云贝,兑换");
+        assertThat(r.next()).containsExactly("a", "他说\"你好\"", "");
+        assertThat(r.next()).isNull();
+    }
+
+    @Test
+    void lastRecordWithoutTrailingNewline() throws Exception {
+        CsvReader r = new CsvReader(new StringReader("q,a"));
+        assertThat(r.next()).containsExactly("q", "a");
+        assertThat(r.next()).isNull();
+    }
+
+    @Test
+    void unterminatedQuoteFails() {
+        CsvReader r = new CsvReader(new StringReader("q,\"never closed\n"));
+        assertThatThrownBy(r::next).hasMessageContaining("unterminated");
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.cs_agent_service.service.ingest;
+
+import com.example.cs_agent_service.config.CacheProperties;
+import com.example.cs_agent_service.config.MessageBufferProperties;
+import com.example.cs_agent_service.dto.MessageBufferStatus;
+import com.example.cs_agent_service.entity.MessageSender;
+import com.example.cs_agent_service.service.cache.RedisCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageWriteBufferTest {
+
+    private final StubWriter writer = new StubWriter();
+    private final MessageBufferProperties props = new MessageBufferProperties();
+    private final CacheProperties cacheProps = new CacheProperties();
+    private final MapRedis redis = new MapRedis();
+
+    @Test
+    void fullQueueIsRejected() {
+        props.setCapacity(2);
+        MessageWriteBuffer buffer = buffer();
+
+        assertThat(buffer.offer(msg("a"))).hasValue(1);
+        assertThat(buffer.offer(msg("b"))).hasValue(2);
+        assertThat(buffer.offer(msg("c"))).isEmpty();
+        assertThat(buffer.status().queued()).isEqualTo(2);
+        assertThat(buffer.status().acceptedSequence()).isEqualTo(2);
+    }
+
+    @Test
+    void failedBatchIsRetriedThenWrittenRowByRow() {
+        props.setMaxRetries(3);
+        MessageWriteBuffer buffer = buffer();
+        buffer.offer(msg("a"));
+        buffer.offer(msg("b"));
+        writer.failMultiRow = true;
+
+        buffer.flush();
+        buffer.flush();
+        assertThat(writer.written).isEmpty();
+        assertThat(buffer.status().durableSequence()).isZero();
+        // 重试期间批次不动，不会重新从队列里取
+        assertThat(writer.attempts).containsExactly(List.of("a", "b"), List.of("a", "b"));
+
+        buffer.flush();
+        assertThat(writer.written).containsExactly("a", "b");
+        assertThat(buffer.status().durableSequence()).isEqualTo(2);
+        assertThat(buffer.status().dropped()).isZero();
+    }
+
+    @Test
+    void constraintViolationRowIsDroppedAndCounted() {
+        props.setMaxRetries(1);
+        MessageWriteBuffer buffer = buffer();
+        buffer.offer(msg("a"));
+        buffer.offer(msg("bad"));
+        buffer.offer(msg("c"));
+
+        buffer.flush();
+
+        assertThat(writer.written).containsExactly("a", "c");
+        assertThat(buffer.status().dropped()).isEqualTo(1);
+        // 丢弃的行也算处理完
+        assertThat(buffer.status().durableSequence()).isEqualTo(3);
+    }
+
+    @Test
+    void durableSequenceStopsBeforeUnwrittenRows() {
+        props.setMaxRetries(1);
+        MessageWriteBuffer buffer = buffer();
+        buffer.offer(msg("a"));
+        buffer.offer(msg("down"));
+        buffer.offer(msg("c"));
+
+        buffer.flush();
+        assertThat(writer.written).containsExactly("a");
+        assertThat(buffer.status().durableSequence()).isEqualTo(1);
+        assertThat(buffer.status().dropped()).isZero();
+
+        // 数据库恢复后从未写入的行继续
+        writer.down = false;
+        buffer.flush();
+        assertThat(writer.written).containsExactly("a", "down", "c");
+        assertThat(buffer.status().durableSequence()).isEqualTo(3);
+    }
+
+    @Test
+    void messagesOfConversationClosedBeforeFlushAreDiscarded() {
+        MessageWriteBuffer buffer = buffer();
+        buffer.offer(msg("a"));
+        buffer.offer(new PendingMessage(StubWriter.CLOSED, MessageSender.USER, "late", Instant.EPOCH));
+        buffer.offer(msg("c"));
+
+        buffer.flush();
+
+        assertThat(writer.written).containsExactly("a", "c");
+        assertThat(buffer.status().dropped()).isEqualTo(1);
+        assertThat(buffer.status().durableSequence()).isEqualTo(3);
+    }
+
+    @Test
+    void progressOfAnotherNodeIsReadFromRedis() {
+        cacheProps.setEnabled(true);
+        MessageWriteBuffer issuing = buffer();
+        MessageWriteBuffer other = buffer();
+        long seq = issuing.offer(msg("a")).getAsLong();
+
+        issuing.flush();
+
+        MessageBufferStatus status = other.status(issuing.node()).orElseThrow();
+        assertThat(status.node()).isEqualTo(issuing.node());
+        assertThat(status.durableSequence()).isGreaterThanOrEqualTo(seq);
+        // 重启后的进程是新的 node，旧回执查不到而不是被新序号误判为已落库
+        assertThat(other.status("restarted-node")).isEmpty();
+        assertThat(other.status(null).orElseThrow().node()).isEqualTo(other.node());
+    }
+
+    private MessageWriteBuffer buffer() {
+        return new MessageWriteBuffer(writer, props, redis, cacheProps, new SimpleMeterRegistry());
+    }
+
+    private static PendingMessage msg(String content) {
+        return new PendingMessage(1L, MessageSender.USER, content, Instant.EPOCH);
+    }
+
+    private static final class MapRedis extends RedisCacheService {
+        final Map<String, String> values = new HashMap<>();
+
+        MapRedis() {
+            super(null, new SimpleMeterRegistry());
+        }
+
+        @Override
+        public Optional<String> get(String key) {
+            return Optional.ofNullable(values.get(key));
+        }
+
+        @Override
+        public void set(String key, String value, long ttlSeconds) {
+            values.put(key, value);
+        }
+    }
+
+    /**
+     * 含 "bad" 的批次违反约束；down 时含 "down" 的批次连接失败；failMultiRow 时多行语句一律失败；
+     * 会话 CLOSED 已关闭。
+     */
+    private static final class StubWriter extends MessageBatchWriter {
+        static final long CLOSED = 2L;
+        final List<List<String>> attempts = new ArrayList<>();
+        final List<String> written = new ArrayList<>();
+        boolean failMultiRow;
+        boolean down = true;
+
+        @Override
+        public int insertOpen(List<PendingMessage> rows, int maxRowsPerStatement) {
+            List<String> contents = rows.stream().map(PendingMessage::content).toList();
+            attempts.add(contents);
+            if (contents.contains("bad")) throw new DataIntegrityViolationException("content");
+            if (down && contents.contains("down")) throw new DataAccessResourceFailureException("connection refused");
+            if (failMultiRow && rows.size() > 1) throw new DataAccessResourceFailureException("timeout");
+            List<String> open = rows.stream().filter(m -> m.conversationId() != CLOSED).map(PendingMessage::content).toList();
+            written.addAll(open);
+            return open.size();
+        }
+    }
+}
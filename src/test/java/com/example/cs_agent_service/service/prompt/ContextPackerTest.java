@@ -0,0 +1,60 @@
+package com.example.cs_agent_service.service.prompt;
+
+import com.example.cs_agent_service.config.PromptProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextPackerTest {
+
+    @Test
+    void ordersHitsByBm25AndDropsUnrelatedOnes() {
+        ContextPacker packer = new ContextPacker(new PromptProperties(), new SimpleMeterRegistry());
+        List<KnowledgeBase> hits = List.of(
+                kb("歌词不同步怎么办", "歌词", "在播放页点击歌词，选择【歌词调整】即可。"),
+                kb("黑胶VIP如何取消自动续费", "黑胶VIP,自动续费,取消", "进入【设置】-【自动续费管理】关闭即可。"),
+                kb("黑胶VIP有哪些权益", "黑胶VIP", "黑胶VIP可畅听会员曲库。"));
+
+        ContextPacker.Packed packed = packer.pack("请问黑胶VIP的自动续费怎么取消？", hits);
+
+        assertThat(packed.prompt()).startsWith("已知信息：\n[1] 进入【设置】-【自动续费管理】关闭即可。\n[2] 黑胶VIP可畅听");
+        assertThat(packed.prompt()).doesNotContain("歌词").endsWith("用户问题：请问黑胶VIP的自动续费怎么取消？");
+        assertThat(packed.included()).isEqualTo(2);
+        assertThat(packed.dropped()).isEqualTo(1);
+    }
+
+    @Test
+    void truncatesToTokenBudget() {
+        PromptProperties props = new PromptProperties();
+        props.setContextTokenBudget(60);
+        props.setMinTruncatedTokens(10);
+        ContextPacker packer = new ContextPacker(props, new SimpleMeterRegistry());
+        String longAnswer = "开通黑胶VIP后可以畅听会员曲库，下载无损音质歌曲，".repeat(10);
+        List<KnowledgeBase> hits = List.of(
+                kb("黑胶VIP权益", "黑胶VIP", longAnswer),
+                kb("黑胶VIP价格", "黑胶VIP", longAnswer));
+
+        ContextPacker.Packed packed = packer.pack("黑胶VIP", hits);
+
+        assertThat(packed.tokens()).isLessThanOrEqualTo(60);
+        assertThat(packed.truncated()).isEqualTo(1);
+        assertThat(packed.dropped()).isEqualTo(1);
+        assertThat(packed.prompt()).contains("…\n用户问题：");
+
+        String cut = TokenEstimator.truncate(longAnswer, 25);
+        assertThat(TokenEstimator.estimate(cut)).isLessThanOrEqualTo(25);
+        assertThat(TokenEstimator.estimate(longAnswer.substring(0, cut.length() + 1))).isGreaterThan(25);
+    }
+
+    private static KnowledgeBase kb(String question, String keywords, String answer) {
+        KnowledgeBase kb = new KnowledgeBase();
+        kb.setQuestion(question);
+        kb.setKeywords(keywords);
+        kb.setAnswer(answer);
+        return kb;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswIndexTest {
+
+    private static final int DIMS = 32;
+
+    @Test
+    void top5MatchesBruteForceWithHighRecall() {
+        Random random = new Random(7);
+        List<float[]> vectors = new ArrayList<>();
+        HnswIndex index = new HnswIndex(16, 100, 42);
+        for (int i = 0; i < 5_000; i++) {
+            float[] v = randomUnit(random);
+            vectors.add(v);
+            index.add(i, v);
+        }
+
+        int found = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomUnit(random);
+            List<Long> exact = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -HnswIndex.sim(query, vectors.get(i))))
+                    .limit(5).map(Integer::longValue).toList();
+            List<Long> approx = index.search(query, 5, 64).stream().map(HnswIndex.Hit::id).toList();
+            found += (int) approx.stream().filter(exact::contains).count();
+        }
+        assertThat(found / (queries * 5.0)).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void removedAndReplacedEntriesAreNotReturned() {
+        Random random = new Random(11);
+        HnswIndex index = new HnswIndex(8, 50, 42);
+        float[] target = randomUnit(random);
+        index.add(1, target);
+        for (int i = 2; i <= 200; i++) index.add(i, randomUnit(random));
+
+        assertThat(index.search(target, 1, 32).get(0).id()).isEqualTo(1L);
+
+        index.remove(1);
+        assertThat(index.search(target, 5, 32)).extracting(HnswIndex.Hit::id).doesNotContain(1L);
+
+        // 同一 id 重新加入时旧向量作废
+        index.add(2, target);
+        assertThat(index.search(target, 1, 32).get(0).id()).isEqualTo(2L);
+        assertThat(index.size()).isEqualTo(199);
+    }
+
+    private static float[] randomUnit(Random random) {
+        float[] v = new float[DIMS];
+        double norm = 0;
+        for (int i = 0; i < DIMS; i++) {
+            v[i] = (float) random.nextGaussian();
+            norm += v[i] * v[i];
+        }
+        float inv = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMS; i++) v[i] *= inv;
+        return v;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IndexSegmentTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotRoundTripsThroughMappedFile() throws IOException {
+        IndexSegment.Stamp stamp = new IndexSegment.Stamp(3, 1_700_000_000_000_000_000L);
+        Map<Long, Set<String>> grams = Map.of(
+                30L, Set.of("黑胶", "vi", "vip"),
+                10L, Set.of("黑胶", "云贝"),
+                20L, Set.of("歌词"));
+        Map<Long, Set<String>> keywords = Map.of(30L, Set.of("黑胶vip"), 10L, Set.of("云贝"), 20L, Set.of());
+
+        IndexSegment segment = new IndexSegment.Builder(stamp, grams, keywords).writeTo(dir.resolve("kb.snap"));
+        IndexSegment reopened = IndexSegment.open(dir.resolve("kb.snap"));
+
+        for (IndexSegment s : List.of(segment, reopened)) {
+            assertThat(s.stamp()).isEqualTo(stamp);
+            assertThat(s.docs()).isEqualTo(3);
+            assertThat(s.ordinal(20L)).isEqualTo(1);
+            assertThat(s.ordinal(25L)).isEqualTo(-1);
+
+            IndexSegment.Dict dict = s.grams();
+            assertThat(dict.terms).isEqualTo(5);
+            int t = dict.find("黑胶");
+            assertThat(docIds(s, dict, t)).containsExactly(10L, 30L);
+            assertThat(dict.find("vip")).isGreaterThanOrEqualTo(0);
+            assertThat(dict.find("版权")).isEqualTo(-1);
+
+            IndexSegment.Dict kw = s.keywords();
+            assertThat(kw.term(kw.find("黑胶vip"))).isEqualTo("黑胶vip");
+            assertThat(docIds(s, kw, kw.find("云贝"))).containsExactly(10L);
+        }
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws IOException {
+        Path path = dir.resolve("kb.snap");
+        new IndexSegment.Builder(IndexSegment.Stamp.NONE, Map.of(1L, Set.of("云贝")), Map.of(1L, Set.of()))
+                .writeTo(path);
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 1);
+        }
+
+        assertThatThrownBy(() -> IndexSegment.open(path)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void releaseUnmapsOnceAndKeepsEmptyUsable() throws IOException {
+        Path path = dir.resolve("kb.snap");
+        IndexSegment segment = new IndexSegment.Builder(IndexSegment.Stamp.NONE, Map.of(1L, Set.of("云贝")), Map.of(1L, Set.of()))
+                .writeTo(path);
+
+        segment.release();
+        segment.release();
+        IndexSegment.EMPTY.release();
+
+        assertThat(IndexSegment.EMPTY.docs()).isZero();
+        assertThat(IndexSegment.EMPTY.grams().find("云贝")).isEqualTo(-1);
+        assertThat(IndexSegment.open(path).docs()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentWritersToOnePathDoNotShareTheTempFile() throws Exception {
+        Path path = dir.resolve("kb.snap");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<IndexSegment>> written = new ArrayList<>();
+            for (int n = 1; n <= 8; n++) {
+                Map<Long, Set<String>> grams = new HashMap<>();
+                for (long id = 1; id <= n * 500L; id++) grams.put(id, Set.of("云贝" + id % 7, "黑胶" + id % 11));
+                IndexSegment.Builder builder = new IndexSegment.Builder(new IndexSegment.Stamp(n, n), grams, Map.of());
+                written.add(pool.submit(() -> builder.writeTo(path)));
+            }
+            for (Future<IndexSegment> f : written) assertThat(f.get().docs()).isPositive();
+        } finally {
+            pool.shutdown();
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files).containsExactly(path);
+        }
+        assertThat(IndexSegment.open(path).docs()).isEqualTo((int) (IndexSegment.open(path).stamp().activeCount() * 500));
+    }
+
+    private static List<Long> docIds(IndexSegment s, IndexSegment.Dict dict, int t) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < dict.df(t); i++) ids.add(s.id(dict.doc(t, i)));
+        return ids;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordAutomatonTest {
+
+    @Test
+    void findsOverlappingAndNestedKeywordsInOnePass() {
+        KeywordAutomaton a = KeywordAutomaton.build(Map.of(
+                "自动续费", Set.of(1L),
+                "续费", Set.of(2L),
+                "费用", Set.of(3L),
+                "黑胶vip", List.of(4L, 5L)
+        ));
+
+        assertThat(a.match("取消自动续费用什么方法")).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(a.match("黑胶 VIP 多少钱")).containsOnlyKeys(4L, 5L);
+        assertThat(a.match("续费续费")).containsEntry(2L, 2);
+        assertThat(a.match("今天天气怎么样")).isEmpty();
+    }
+
+    @Test
+    void emptyAutomatonMatchesNothing() {
+        assertThat(KeywordAutomaton.EMPTY.match("自动续费")).isEmpty();
+        assertThat(KeywordAutomaton.EMPTY.size()).isZero();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import com.example.cs_agent_service.config.RetrievalProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KnowledgeIndexTest {
+
+    private KnowledgeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new KnowledgeIndex(null, new RetrievalProperties());
+        index.rebuild(List.of(
+                kb(1L, "黑胶VIP会员价格是多少？", "黑胶VIP,会员,价格,费用,学生,家庭,优惠"),
+                kb(2L, "学生认证黑胶VIP怎么开通？", "学生认证,黑胶VIP,开通,学生证,教育邮箱"),
+                kb(3L, "为什么搜不到某首歌？", "搜不到歌,版权,下架,续约,版权合约"),
+                kb(5L, "云贝有什么用？", "云贝,虚拟货币,兑换,周边,抽奖,打赏,装扮"),
+                kb(7L, "如何取消自动续费？", "取消续费,自动续费,会员中心,订阅管理,iOS,安卓")
+        ));
+    }
+
+    @Test
+    void ranksBestMatchFirst() {
+        assertThat(index.search("黑胶VIP会员价格", 5)).first().isEqualTo(1L);
+        assertThat(index.search("学生认证", 5)).first().isEqualTo(2L);
+        assertThat(index.search("取消自动续费", 5)).first().isEqualTo(7L);
+    }
+
+    @Test
+    void matchesCaseInsensitivelyAcrossKeywords() {
+        assertThat(index.search("黑胶vip", 5)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(index.search("云贝", 5)).containsExactly(5L);
+    }
+
+    @Test
+    void unrelatedQuestionHasNoHits() {
+        assertThat(index.search("今天天气样", 5)).isEmpty();
+    }
+
+    @Test
+    void keywordInLongQuestionIsRecalled() {
+        // n-gram 覆盖率很低，但关键词“云贝”完整出现在问题里
+        String q = "我昨天晚上在地铁上听歌的时候突然发现之前攒的云贝全都不见了这是怎么回事";
+        assertThat(index.matchKeywords(q)).containsOnlyKeys(5L);
+        assertThat(index.search(q, 5)).containsExactly(5L);
+    }
+
+    @Test
+    void keywordMatchFollowsUpdates() throws InterruptedException {
+        assertThat(index.matchKeywords("ios上怎么关")).containsOnlyKeys(7L);
+
+        // 自动机在后台重建，检索线程不等待
+        index.remove(7L);
+        await(() -> index.matchKeywords("ios上怎么关").isEmpty());
+
+        index.upsert(kb(9L, "怎么上传歌词？", "上传歌词,LRC"));
+        await(() -> index.matchKeywords("我的lrc文件传不上去").containsKey(9L));
+        assertThat(index.matchKeywords("我的lrc文件传不上去")).containsOnlyKeys(9L);
+    }
+
+    @Test
+    void upsertAndRemoveAreIncremental() {
+        KnowledgeBase kb = kb(9L, "怎么上传歌词？", "上传歌词,lrc");
+        index.upsert(kb);
+        assertThat(index.search("上传歌词", 5)).containsExactly(9L);
+
+        kb.setActive(false);
+        index.upsert(kb);
+        assertThat(index.search("上传歌词", 5)).isEmpty();
+
+        index.remove(5L);
+        assertThat(index.search("云贝", 5)).isEmpty();
+        assertThat(index.size()).isEqualTo(4);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static KnowledgeBase kb(Long id, String question, String keywords) {
+        KnowledgeBase kb = new KnowledgeBase();
+        kb.setId(id);
+        kb.setQuestion(question);
+        kb.setKeywords(keywords);
+        kb.setAnswer("answer-" + id);
+        kb.setActive(true);
+        return kb;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.cs_agent_service.service.retrieval;
+
+import com.example.cs_agent_service.config.EmbeddingProperties;
+import com.example.cs_agent_service.config.RetrievalProperties;
+import com.example.cs_agent_service.entity.KnowledgeBase;
+import com.example.cs_agent_service.service.embedding.EmbeddingProvider;
+import com.example.cs_agent_service.service.embedding.HashingEmbeddingProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VectorIndexTest {
+
+    private final List<String> embedded = new ArrayList<>();
+    private final EmbeddingProvider hashing = new HashingEmbeddingProvider(new EmbeddingProperties());
+    private final EmbeddingProvider counting = new EmbeddingProvider() {
+        @Override
+        public float[] embed(String text) {
+            embedded.add(text);
+            return hashing.embed(text);
+        }
+
+        @Override
+        public int dimensions() {
+            return hashing.dimensions();
+        }
+
+        @Override
+        public String id() {
+            return hashing.id();
+        }
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rebuildOnlyEmbedsNewOrChangedQuestions() {
+        RetrievalProperties props = new RetrievalProperties();
+        props.setMode("hybrid");
+        VectorIndex index = new VectorIndex(null, counting, props);
+        index.rebuild(List.of(kb(1L, "怎么上传歌词？"), kb(2L, "云贝有什么用？"), kb(3L, "如何取消自动续费？")));
+        assertThat(embedded).hasSize(3);
+        embedded.clear();
+
+        index.upsert(kb(2L, "云贝可以兑换什么？"));
+        assertThat(embedded).hasSize(1);
+        embedded.clear();
+
+        // 1 未变、2 已由 upsert 向量化、3 改了问题、4 新增
+        index.rebuild(List.of(kb(1L, "怎么上传歌词？"), kb(2L, "云贝可以兑换什么？"),
+                kb(3L, "怎么关闭自动续费？"), kb(4L, "歌曲为什么变灰了？")));
+        assertThat(embedded).hasSize(2);
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.search("怎么上传歌词", 1)).containsExactly(1L);
+    }
+
+    @Test
+    void unrelatedQuestionsAreNotVectorHits() {
+        RetrievalProperties props = new RetrievalProperties();
+        props.setMode("vector");
+        VectorIndex index = new VectorIndex(null, hashing, props);
+        String[] seed = {"黑胶VIP会员价格是多少？", "学生认证黑胶VIP怎么开通？", "为什么搜不到某首歌？", "怎么上传歌词？",
+                "云贝有什么用？", "APP闪退怎么办？", "如何取消自动续费？", "怎么设置个性化推荐？", "如何申请音乐人认证？",
+                "私人FM不喜欢的歌怎么办？"};
+        List<KnowledgeBase> entries = new ArrayList<>();
+        for (int i = 0; i < seed.length; i++) entries.add(kb(i + 1L, seed[i]));
+        index.rebuild(entries);
+
+        // 只靠常见字重合（"歌"、"为什么"）的无关问题不能越过拒答闸门
+        for (String q : List.of("这首歌叫什么名字", "为什么天是蓝的", "今天天气怎么样", "北京到上海的高铁多少钱", "手机没电了怎么办")) {
+            assertThat(index.search(q, 5)).as(q).isEmpty();
+        }
+        assertThat(index.search("音乐人怎么认证", 5)).startsWith(9L);
+        assertThat(index.search("自动续费怎么关", 5)).startsWith(7L);
+    }
+
+    @Test
+    void snapshotKeepsVectorsForTheSameProviderOnly() throws IOException {
+        Path path = dir.resolve("kb-index.snap.vec");
+        IndexSegment.Stamp stamp = new IndexSegment.Stamp(2, 1_700_000_000_000_000_000L);
+        Map<Long, VectorIndex.Embedded> entries = Map.of(
+                1L, new VectorIndex.Embedded("上传歌词", hashing.embed("上传歌词")),
+                2L, new VectorIndex.Embedded("云贝有什么用", hashing.embed("云贝有什么用")));
+        VectorSnapshot.write(path, hashing.id(), hashing.dimensions(), stamp, entries);
+
+        VectorSnapshot.Loaded loaded = VectorSnapshot.read(path, hashing.id(), hashing.dimensions());
+        assertThat(loaded.stamp()).isEqualTo(stamp);
+        assertThat(loaded.entries()).containsOnlyKeys(1L, 2L);
+        assertThat(loaded.entries().get(2L).core()).isEqualTo("云贝有什么用");
+        assertThat(loaded.entries().get(2L).vector()).containsExactly(entries.get(2L).vector());
+
+        assertThatThrownBy(() -> VectorSnapshot.read(path, "dashscope:text-embedding-v3", hashing.dimensions()))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> VectorSnapshot.read(path, hashing.id(), 128)).isInstanceOf(IOException.class);
+    }
+
+    private static KnowledgeBase kb(Long id, String question) {
+        KnowledgeBase kb = new KnowledgeBase();
+        kb.setId(id);
+        kb.setQuestion(question);
+        kb.setAnswer("answer-" + id);
+        kb.setActive(true);
+        return kb;
+    }
+}